@@ -172,11 +172,28 @@ def main():
     artifacts_list.append(tar_path)
     print("Tarball file is \"%s\"." % tar_path)
 
-    # Build the SDK code generator, run it, and build the gem:
-    print("Running Maven build ...")
+    # Write the Maven settings file:
     settings_path = "settings.xml"
     with open(settings_path, "w") as settings_file:
         settings_file.write(SETTINGS)
+
+    # Run the tests with the code generated in each of the generator
+    # modes. This needs to be done before the main build, so that the
+    # code and the test logs that are packaged are the default ones:
+    for profile in ["split", "lazy", "fast-structs", "sparse", "native"]:
+        print("Running Maven tests with profile \"%s\" ..." % profile)
+        result = run_command([
+            "mvn",
+            "test",
+            "--settings=%s" % settings_path,
+            "-P%s" % profile,
+        ])
+        if result != 0:
+            print("Maven tests with profile \"%s\" failed with exit code %d." % (profile, result))
+            sys.exit(1)
+
+    # Build the SDK code generator, run it, and build the gem:
+    print("Running Maven build ...")
     result = run_command([
         "mvn",
         "package",
@@ -0,0 +1,180 @@
+/*
+Copyright (c) 2016 Red Hat, Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.ovirt.sdk.ruby.benchmarks;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import javax.enterprise.inject.spi.CDI;
+
+import org.jboss.weld.environment.se.Weld;
+import org.ovirt.api.metamodel.analyzer.ModelAnalyzer;
+import org.ovirt.api.metamodel.concepts.Attribute;
+import org.ovirt.api.metamodel.concepts.Link;
+import org.ovirt.api.metamodel.concepts.Locator;
+import org.ovirt.api.metamodel.concepts.Method;
+import org.ovirt.api.metamodel.concepts.Model;
+import org.ovirt.api.metamodel.concepts.Name;
+import org.ovirt.api.metamodel.concepts.Parameter;
+import org.ovirt.api.metamodel.concepts.Service;
+import org.ovirt.api.metamodel.concepts.StructType;
+import org.ovirt.api.metamodel.tool.BuiltinTypes;
+import org.ovirt.api.metamodel.tool.Names;
+import org.ovirt.sdk.ruby.RubyNames;
+
+/**
+ * This class contains the methods used by the benchmarks to start the CDI container and to load the model.
+ */
+public final class BenchmarkSupport {
+    /**
+     * The name of the system property that contains the location of the model. The default is the {@code model.jar}
+     * file that the build copies to the {@code target} directory.
+     */
+    public static final String MODEL_PROPERTY = "benchmark.model";
+
+    private BenchmarkSupport() {
+    }
+
+    /**
+     * Starts the CDI container. Discovery is disabled because the benchmarks run from a single jar file that contains
+     * all the dependencies, and only the beans of the generator and of the metamodel tool are needed.
+     */
+    public static Weld startContainer() {
+        Weld weld = new Weld()
+            .disableDiscovery()
+            .addPackages(true, RubyNames.class)
+            .addPackages(true, Names.class);
+        weld.initialize();
+        return weld;
+    }
+
+    /**
+     * Returns the bean of the given class from the running CDI container.
+     */
+    public static <T> T select(Class<T> type) {
+        return CDI.current().select(type).get();
+    }
+
+    /**
+     * Analyzes the model and adds the built-in types, the same way that the generator tool does. Must be called after
+     * starting the container.
+     */
+    public static Model loadModel() throws Exception {
+        File modelFile = new File(System.getProperty(MODEL_PROPERTY, "target/model.jar"));
+        if (!modelFile.exists()) {
+            throw new IllegalStateException(
+                "The model file \"" + modelFile.getAbsolutePath() + "\" doesn't exist, use the \"" + MODEL_PROPERTY +
+                "\" system property to specify its location"
+            );
+        }
+        Model model = new Model();
+        ModelAnalyzer modelAnalyzer = new ModelAnalyzer();
+        modelAnalyzer.setModel(model);
+        modelAnalyzer.analyzeSource(modelFile);
+        select(BuiltinTypes.class).addBuiltinTypes(model);
+        return model;
+    }
+
+    /**
+     * Enlarges the model adding {@code factor - 1} copies of each struct type and of each service, so that the
+     * resulting model has {@code factor} times the number of struct types and services of the original. The copies
+     * have the same members and documentation than the originals, and their names are the name of the original
+     * followed by the word {@code copy} and a number. The locators of the copied services point to the original
+     * services, so the copies aren't reachable from the root service, but they are generated like any other service.
+     */
+    public static void enlargeModel(Model model, int factor) {
+        List<StructType> originalTypes = model.types()
+            .filter(StructType.class::isInstance)
+            .map(StructType.class::cast)
+            .collect(Collectors.toList());
+        List<Service> originalServices = model.services().collect(Collectors.toList());
+        for (int i = 1; i < factor; i++) {
+            for (StructType original : originalTypes) {
+                model.addType(copyType(original, i));
+            }
+            for (Service original : originalServices) {
+                model.addService(copyService(original, i));
+            }
+        }
+    }
+
+    private static Name copyName(Name original, int index) {
+        List<String> words = new ArrayList<>(original.getWords());
+        words.add("copy" + index);
+        return new Name(words);
+    }
+
+    private static StructType copyType(StructType original, int index) {
+        StructType copy = new StructType();
+        copy.setName(copyName(original.getName(), index));
+        copy.setDoc(original.getDoc());
+        copy.setBase(original.getBase());
+        original.attributes().forEach(originalAttribute -> {
+            Attribute copyAttribute = new Attribute();
+            copyAttribute.setName(originalAttribute.getName());
+            copyAttribute.setDoc(originalAttribute.getDoc());
+            copyAttribute.setType(originalAttribute.getType());
+            copyAttribute.setDeclaringType(copy);
+            copy.addAttribute(copyAttribute);
+        });
+        original.links().forEach(originalLink -> {
+            Link copyLink = new Link();
+            copyLink.setName(originalLink.getName());
+            copyLink.setDoc(originalLink.getDoc());
+            copyLink.setType(originalLink.getType());
+            copyLink.setDeclaringType(copy);
+            copy.addLink(copyLink);
+        });
+        return copy;
+    }
+
+    private static Service copyService(Service original, int index) {
+        Service copy = new Service();
+        copy.setName(copyName(original.getName(), index));
+        copy.setDoc(original.getDoc());
+        copy.setBase(original.getBase());
+        original.methods().forEach(originalMethod -> {
+            Method copyMethod = new Method();
+            copyMethod.setName(originalMethod.getName());
+            copyMethod.setDoc(originalMethod.getDoc());
+            copyMethod.setDeclaringService(copy);
+            originalMethod.parameters().map(BenchmarkSupport::copyParameter).forEach(copyMethod::addParameter);
+            copy.addMethod(copyMethod);
+        });
+        original.locators().forEach(originalLocator -> {
+            Locator copyLocator = new Locator();
+            copyLocator.setName(originalLocator.getName());
+            copyLocator.setDoc(originalLocator.getDoc());
+            copyLocator.setService(originalLocator.getService());
+            copyLocator.setDeclaringService(copy);
+            originalLocator.parameters().map(BenchmarkSupport::copyParameter).forEach(copyLocator::addParameter);
+            copy.addLocator(copyLocator);
+        });
+        return copy;
+    }
+
+    private static Parameter copyParameter(Parameter original) {
+        Parameter copy = new Parameter();
+        copy.setName(original.getName());
+        copy.setDoc(original.getDoc());
+        copy.setType(original.getType());
+        copy.setIn(original.isIn());
+        copy.setOut(original.isOut());
+        return copy;
+    }
+}
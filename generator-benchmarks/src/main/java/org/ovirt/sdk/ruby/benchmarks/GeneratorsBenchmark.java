@@ -0,0 +1,115 @@
+/*
+Copyright (c) 2016 Red Hat, Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.ovirt.sdk.ruby.benchmarks;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.jboss.weld.environment.se.Weld;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.ovirt.api.metamodel.concepts.Model;
+import org.ovirt.sdk.ruby.GeneratorOptions;
+import org.ovirt.sdk.ruby.ReadersGenerator;
+import org.ovirt.sdk.ruby.RubyGenerator;
+import org.ovirt.sdk.ruby.RubyNames;
+import org.ovirt.sdk.ruby.ServicesGenerator;
+import org.ovirt.sdk.ruby.TypesGenerator;
+import org.ovirt.sdk.ruby.VersionGenerator;
+import org.ovirt.sdk.ruby.WritersGenerator;
+
+/**
+ * Measures the cost of running each of the generators against the real model, and against models enlarged with
+ * copies of the struct types and services so that they have 10 and 100 times the number of types and services.
+ *
+ * The output manifest isn't loaded, so the files are written in every invocation. Otherwise only the first invocation
+ * would write them, and the rest would only measure the check that they haven't changed.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class GeneratorsBenchmark {
+    @Param({"types", "readers", "writers", "services", "version"})
+    private String generatorName;
+
+    @Param({"1", "10", "100"})
+    private int scale;
+
+    @Param({"false", "true"})
+    private boolean streaming;
+
+    private Weld weld;
+    private Model model;
+    private RubyGenerator generator;
+    private File outDir;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        weld = BenchmarkSupport.startContainer();
+        model = BenchmarkSupport.loadModel();
+        BenchmarkSupport.enlargeModel(model, scale);
+        BenchmarkSupport.select(RubyNames.class).setVersion("4.1.0");
+        BenchmarkSupport.select(GeneratorOptions.class).setStreaming(streaming);
+        outDir = Files.createTempDirectory("ruby-sdk-benchmark-").toFile();
+        generator = BenchmarkSupport.select(getGeneratorClass());
+        generator.setOut(outDir);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        weld.shutdown();
+        FileUtils.deleteDirectory(outDir);
+    }
+
+    @Benchmark
+    public void generate() throws Exception {
+        generator.generate(model);
+    }
+
+    private Class<? extends RubyGenerator> getGeneratorClass() {
+        switch (generatorName) {
+        case "types":
+            return TypesGenerator.class;
+        case "readers":
+            return ReadersGenerator.class;
+        case "writers":
+            return WritersGenerator.class;
+        case "services":
+            return ServicesGenerator.class;
+        case "version":
+            return VersionGenerator.class;
+        default:
+            throw new IllegalArgumentException("Unknown generator \"" + generatorName + "\"");
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+Copyright (c) 2016 Red Hat, Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.ovirt.sdk.ruby.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jboss.weld.environment.se.Weld;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.ovirt.sdk.ruby.RubyBuffer;
+
+/**
+ * Measures the cost of adding lines and comments to a {@link RubyBuffer}, and of converting it to a string. Each
+ * invocation of the {@code add*} benchmarks fills a new buffer with {@link #LINES} lines, which is roughly the size of
+ * one of the generated classes.
+ *
+ * The buffers are never written, so streaming isn't enabled here, as it would leave a temporary file for each buffer.
+ * The cost of streaming is measured by {@link GeneratorsBenchmark}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RubyBufferBenchmark {
+    // The number of lines added to the buffer by each invocation:
+    private static final int LINES = 100;
+
+    private Weld weld;
+
+    // The buffer used by the to string benchmark:
+    private RubyBuffer filled;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        weld = BenchmarkSupport.startContainer();
+        filled = createBuffer();
+        fillLines(filled);
+        fillComments(filled);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        weld.shutdown();
+    }
+
+    @Benchmark
+    public RubyBuffer addLine() {
+        RubyBuffer buffer = createBuffer();
+        fillLines(buffer);
+        return buffer;
+    }
+
+    @Benchmark
+    public RubyBuffer addComment() {
+        RubyBuffer buffer = createBuffer();
+        fillComments(buffer);
+        return buffer;
+    }
+
+    @Benchmark
+    public String toStringBuffer() {
+        return filled.toString();
+    }
+
+    private RubyBuffer createBuffer() {
+        RubyBuffer buffer = BenchmarkSupport.select(RubyBuffer.class);
+        buffer.setFileName("ovirtsdk4/types");
+        return buffer;
+    }
+
+    private void fillLines(RubyBuffer buffer) {
+        buffer.beginModule("OvirtSDK4");
+        for (int i = 0; i < LINES; i++) {
+            buffer.addLine("def %1$s=(value)", "name");
+            buffer.addLine("@%1$s = value", "name");
+            buffer.addLine("end");
+        }
+        buffer.endModule("OvirtSDK4");
+    }
+
+    private void fillComments(RubyBuffer buffer) {
+        for (int i = 0; i < LINES; i++) {
+            buffer.addComment("Returns the value of the `%1$s` attribute.", "name");
+            buffer.addComment();
+            buffer.addYardTag("return", "[%1$s]", "String");
+        }
+    }
+}
@@ -0,0 +1,112 @@
+/*
+Copyright (c) 2016 Red Hat, Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.ovirt.sdk.ruby.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.jboss.weld.environment.se.Weld;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.ovirt.api.metamodel.concepts.Model;
+import org.ovirt.api.metamodel.concepts.Service;
+import org.ovirt.api.metamodel.concepts.StructMember;
+import org.ovirt.api.metamodel.concepts.StructType;
+import org.ovirt.api.metamodel.concepts.Type;
+import org.ovirt.sdk.ruby.RubyNames;
+
+/**
+ * Measures the cost of calculating the Ruby names of all the types, members and services of the model, both when the
+ * names are already cached and when they have to be calculated again.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class RubyNamesBenchmark {
+    @Param({"1", "10", "100"})
+    private int scale;
+
+    private Weld weld;
+    private RubyNames rubyNames;
+
+    // The concepts whose names will be calculated:
+    private List<Type> types;
+    private List<StructMember> members;
+    private List<Service> services;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        weld = BenchmarkSupport.startContainer();
+        rubyNames = BenchmarkSupport.select(RubyNames.class);
+        Model model = BenchmarkSupport.loadModel();
+        BenchmarkSupport.enlargeModel(model, scale);
+        types = model.types().collect(Collectors.toList());
+        members = model.types()
+            .filter(StructType.class::isInstance)
+            .map(StructType.class::cast)
+            .flatMap(type -> Stream.concat(type.attributes(), type.links()))
+            .collect(Collectors.toList());
+        services = model.services().collect(Collectors.toList());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        weld.shutdown();
+    }
+
+    @Benchmark
+    public void cached(Blackhole blackhole) {
+        calculateNames(blackhole);
+    }
+
+    @Benchmark
+    public void uncached(Blackhole blackhole) {
+        rubyNames.clearCache();
+        calculateNames(blackhole);
+    }
+
+    private void calculateNames(Blackhole blackhole) {
+        for (Type type : types) {
+            blackhole.consume(rubyNames.getTypeName(type));
+            blackhole.consume(rubyNames.getReaderName(type));
+            blackhole.consume(rubyNames.getWriterName(type));
+        }
+        for (StructMember member : members) {
+            blackhole.consume(rubyNames.getMemberStyleName(member.getName()));
+        }
+        for (Service service : services) {
+            blackhole.consume(rubyNames.getServiceName(service));
+        }
+    }
+}
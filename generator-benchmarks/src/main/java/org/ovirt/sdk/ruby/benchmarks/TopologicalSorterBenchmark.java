@@ -0,0 +1,96 @@
+/*
+Copyright (c) 2016 Red Hat, Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.ovirt.sdk.ruby.benchmarks;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.ovirt.api.metamodel.concepts.Model;
+import org.ovirt.api.metamodel.concepts.StructType;
+import org.ovirt.sdk.ruby.TopologicalSorter;
+
+/**
+ * Measures the cost of sorting the struct types of the model in inheritance order, comparing the topological sorter
+ * with the previous algorithm that scanned the list of already sorted types for each type.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class TopologicalSorterBenchmark {
+    @Param({"1", "10", "50"})
+    private int scale;
+
+    // The types to sort, already sorted by name, and the sorter:
+    private List<StructType> types;
+    private TopologicalSorter<StructType> sorter;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        Model model = BenchmarkSupport.loadModel();
+        BenchmarkSupport.enlargeModel(model, scale);
+        types = model.types()
+            .filter(StructType.class::isInstance)
+            .map(StructType.class::cast)
+            .sorted()
+            .collect(Collectors.toList());
+        sorter = new TopologicalSorter<>(
+            type -> (StructType) type.getBase(),
+            type -> type.getName().toString()
+        );
+    }
+
+    @Benchmark
+    public List<StructType> topological() {
+        return sorter.sort(types);
+    }
+
+    @Benchmark
+    public Deque<StructType> scanning() {
+        Deque<StructType> pending = new ArrayDeque<>(types);
+        Deque<StructType> sorted = new ArrayDeque<>(pending.size());
+        while (!pending.isEmpty()) {
+            StructType current = pending.removeFirst();
+            StructType base = (StructType) current.getBase();
+            if (base == null || sorted.contains(base)) {
+                sorted.addLast(current);
+            }
+            else {
+                pending.addLast(current);
+            }
+        }
+        return sorted;
+    }
+}
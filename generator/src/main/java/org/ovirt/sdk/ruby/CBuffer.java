@@ -0,0 +1,195 @@
+/*
+Copyright (c) 2016 Red Hat, Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.ovirt.sdk.ruby;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import javax.enterprise.context.Dependent;
+import javax.inject.Inject;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * This class is a buffer intended to simplify generation of the C source code of the extension. Lines are indented
+ * automatically: a line that ends with an opening brace increases the indentation of the following lines, and a line
+ * that starts with a closing brace decreases it.
+ *
+ * Files are written in the same way than the Ruby files generated with {@link RubyBuffer}, so they are also tracked by
+ * the {@link OutputManifest manifest}, and only replaced when their content changes. This is specially important for
+ * C files, as replacing them triggers the compilation of the extension.
+ */
+@Dependent
+public class CBuffer {
+    // Reference to the objects that track the generated files and the metrics:
+    @Inject private OutputManifest manifest;
+    @Inject private GeneratorMetrics metrics;
+
+    // The name of the file, including the extension:
+    private String fileName;
+
+    // The lines of the body of the file:
+    private List<String> lines = new ArrayList<>();
+
+    // The current indentation level:
+    private int level;
+
+    // The buffer used to format lines, reused to avoid allocating a new one for each line:
+    private final StringBuilder formatted = new StringBuilder();
+
+    /**
+     * Sets the file name, including the extension, for example {@code ov_readers.c}.
+     */
+    public void setManifest(OutputManifest newManifest) {
+        manifest = newManifest;
+    }
+
+    public void setMetrics(GeneratorMetrics newMetrics) {
+        metrics = newMetrics;
+    }
+
+    public void setFileName(String newFileName) {
+        fileName = newFileName;
+    }
+
+    /**
+     * Adds an empty line.
+     */
+    public void addLine() {
+        lines.add("");
+    }
+
+    /**
+     * Adds a line, indented according to the current level.
+     */
+    public void addLine(String line) {
+        if (line.startsWith("}") && level > 0) {
+            level--;
+        }
+        StringBuilder buffer = new StringBuilder(level * 4 + line.length());
+        for (int i = 0; i < level; i++) {
+            buffer.append("    ");
+        }
+        buffer.append(line);
+        lines.add(buffer.toString());
+        if (line.endsWith("{")) {
+            level++;
+        }
+    }
+
+    /**
+     * Adds a formatted line. The given {@code args} are formatted using the provided {@code format}, which supports
+     * the same specifiers than {@link String#format(String, Object...)}.
+     */
+    public void addLine(String format, Object ... args) {
+        formatted.setLength(0);
+        RubyTemplate.compile(format).format(formatted, args);
+        addLine(formatted.toString());
+    }
+
+    /**
+     * Adds all the lines of the given buffer, keeping their indentation.
+     */
+    public void addLines(CBuffer other) {
+        lines.addAll(other.lines);
+    }
+
+    /**
+     * Adds a comment.
+     */
+    public void addComment(String format, Object ... args) {
+        formatted.setLength(0);
+        RubyTemplate.compile(format).format(formatted, args);
+        addLine("/* " + formatted + " */");
+    }
+
+    /**
+     * Generates the complete source code of the file, including the license.
+     */
+    public String toString() {
+        StringBuilder buffer = new StringBuilder();
+
+        // License:
+        buffer.append("/*\n");
+        buffer.append("Copyright (c) 2016 Red Hat, Inc.\n");
+        buffer.append("\n");
+        buffer.append("Licensed under the Apache License, Version 2.0 (the \"License\");\n");
+        buffer.append("you may not use this file except in compliance with the License.\n");
+        buffer.append("You may obtain a copy of the License at\n");
+        buffer.append("\n");
+        buffer.append("  http://www.apache.org/licenses/LICENSE-2.0\n");
+        buffer.append("\n");
+        buffer.append("Unless required by applicable law or agreed to in writing, software\n");
+        buffer.append("distributed under the License is distributed on an \"AS IS\" BASIS,\n");
+        buffer.append("WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.\n");
+        buffer.append("See the License for the specific language governing permissions and\n");
+        buffer.append("limitations under the License.\n");
+        buffer.append("*/\n");
+        buffer.append("\n");
+        buffer.append("/* This file is generated, don't edit it. */\n");
+        buffer.append("\n");
+
+        // Body:
+        for (String line : lines) {
+            buffer.append(line);
+            buffer.append("\n");
+        }
+
+        return buffer.toString();
+    }
+
+    /**
+     * Creates the file and writes the source. The required intermediate directories will be created if they don't
+     * exist.
+     *
+     * @param dir the directory where the file will be created
+     * @throws IOException if something fails while creating or writing the file
+     */
+    public void write(File dir) throws IOException {
+        long start = System.nanoTime();
+
+        // Create the directory if needed:
+        File file = new File(dir, fileName);
+        File parent = file.getParentFile();
+        FileUtils.forceMkdir(parent);
+
+        // Write the source to a temporary file in the same directory, and then replace the file:
+        Path temp = parent.toPath().resolve("." + file.getName() + "." + UUID.randomUUID() + ".tmp");
+        try {
+            String source = toString();
+            Files.write(temp, source.getBytes(StandardCharsets.UTF_8));
+            long bytes = Files.size(temp);
+            if (manifest.isLoaded()) {
+                manifest.update(file, temp);
+            }
+            else {
+                System.out.println("Writing file \"" + file.getAbsolutePath() + "\".");
+                Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            metrics.recordWrite(lines.size(), bytes, System.nanoTime() - start);
+        }
+        finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+}
@@ -0,0 +1,665 @@
+/*
+Copyright (c) 2016 Red Hat, Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.ovirt.sdk.ruby;
+
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toSet;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.stream.Stream;
+import javax.inject.Inject;
+import javax.inject.Provider;
+
+import org.ovirt.api.metamodel.concepts.EnumType;
+import org.ovirt.api.metamodel.concepts.ListType;
+import org.ovirt.api.metamodel.concepts.Model;
+import org.ovirt.api.metamodel.concepts.PrimitiveType;
+import org.ovirt.api.metamodel.concepts.StructMember;
+import org.ovirt.api.metamodel.concepts.StructType;
+import org.ovirt.api.metamodel.concepts.Type;
+
+/**
+ * This class is responsible for generating the C source of the native readers, the functions that create instances of
+ * the selected model types directly from the libxml2 reader of the extension, without running Ruby code for each
+ * element. The rest of the types, and the conversion of values that aren't strings, are still delegated to the Ruby
+ * readers, so the objects created are exactly the same.
+ *
+ * The native readers are generated in the directory of the extension given in the options, and only if that option
+ * is present, so the output directory of the Ruby code isn't used. If that option is present but no native readers
+ * have been selected the files generated previously are removed, so that they aren't compiled into the extension.
+ */
+public class CReadersGenerator implements RubyGenerator {
+    // The names of the generated files:
+    private static final String HEADER_FILE = "ov_readers.h";
+    private static final String SOURCE_FILE = "ov_readers.c";
+
+    // Reference to the objects used to generate the code:
+    @Inject private RubyNames rubyNames;
+    @Inject private ModelIndexer modelIndexer;
+    @Inject private GeneratorOptions options;
+
+    // The index of the model that is being generated:
+    private ModelIndex index;
+
+    // The types that have native readers:
+    private List<StructType> nativeTypes;
+
+    // The provider of the buffers used to generate the C code, and the buffer currently in use:
+    @Inject private Provider<CBuffer> bufferProvider;
+    private CBuffer buffer;
+
+    // The names of the C variables that cache the classes used by the generated code, and the method identifiers
+    // indexed by the name of the variable that stores them. They are collected while the functions are generated, and
+    // declared before them:
+    private Set<String> classes;
+    private Set<String> enums;
+    private Map<String, String> ids;
+
+    // Indicates if any of the generated functions uses a table of handlers, so that the helper functions that search
+    // those tables are needed:
+    private boolean tables;
+
+    public void setOut(File newOut) {
+        // Nothing, the native readers are generated in the directory of the extension.
+    }
+
+    public void setRubyNames(RubyNames newRubyNames) {
+        rubyNames = newRubyNames;
+    }
+
+    public void setModelIndexer(ModelIndexer newModelIndexer) {
+        modelIndexer = newModelIndexer;
+    }
+
+    public void setOptions(GeneratorOptions newOptions) {
+        options = newOptions;
+    }
+
+    public void setBufferProvider(Provider<CBuffer> newBufferProvider) {
+        bufferProvider = newBufferProvider;
+    }
+
+    @Override
+    public Set<ModelPart> getDependencies() {
+        return EnumSet.of(ModelPart.TYPES);
+    }
+
+    public void generate(Model model) {
+        // Do nothing if the directory of the extension hasn't been given:
+        File extDir = options.getExtDir();
+        if (extDir == null) {
+            return;
+        }
+
+        // Remove the files generated previously if there are no native readers:
+        if (options.getNativeReaders().isEmpty()) {
+            removeFile(extDir, HEADER_FILE);
+            removeFile(extDir, SOURCE_FILE);
+            return;
+        }
+
+        // Find the types that have native readers, and check that all the selected tags correspond to a type:
+        index = modelIndexer.getIndex(model);
+        nativeTypes = index.getStructTypes().stream()
+            .filter(this::isNative)
+            .collect(toList());
+        Set<String> tags = nativeTypes.stream()
+            .map(type -> index.getStruct(type).getSingularTag())
+            .collect(toSet());
+        Set<String> unknown = new TreeSet<>(options.getNativeReaders());
+        unknown.removeAll(tags);
+        if (!unknown.isEmpty()) {
+            throw new IllegalArgumentException(
+                "The native readers " + unknown + " don't correspond to any type of the model"
+            );
+        }
+
+        // Generate the files:
+        generateHeader(extDir);
+        generateSource(extDir);
+    }
+
+    private boolean isNative(Type type) {
+        return type instanceof StructType && options.isNativeReader(index.getStruct((StructType) type).getSingularTag());
+    }
+
+    private void removeFile(File dir, String fileName) {
+        File file = new File(dir, fileName);
+        if (file.exists()) {
+            System.out.println("Removing file \"" + file.getAbsolutePath() + "\".");
+            try {
+                Files.delete(file.toPath());
+            }
+            catch (IOException exception) {
+                throw new IllegalStateException("Error removing native readers file \"" + fileName + "\"", exception);
+            }
+        }
+    }
+
+    private void writeBuffer(File dir, String fileName) {
+        try {
+            buffer.write(dir);
+        }
+        catch (IOException exception) {
+            throw new IllegalStateException("Error writing native readers file \"" + fileName + "\"", exception);
+        }
+    }
+
+    private void generateHeader(File dir) {
+        buffer = bufferProvider.get();
+        buffer.setFileName(HEADER_FILE);
+        buffer.addLine("#ifndef __OV_READERS_H__");
+        buffer.addLine("#define __OV_READERS_H__");
+        buffer.addLine();
+        buffer.addLine("// Module:");
+        buffer.addLine("extern VALUE ov_readers_module;");
+        buffer.addLine();
+        buffer.addLine("// Initialization function:");
+        buffer.addLine("extern void ov_readers_define(void);");
+        buffer.addLine();
+        buffer.addLine("#endif");
+        writeBuffer(dir, HEADER_FILE);
+    }
+
+    private void generateSource(File dir) {
+        classes = new TreeSet<>();
+        enums = new TreeSet<>();
+        ids = new TreeMap<>();
+        tables = false;
+
+        // Generate the functions first, into a separate buffer, so that the classes and method identifiers that they
+        // use are collected:
+        CBuffer functions = bufferProvider.get();
+        buffer = functions;
+        nativeTypes.forEach(this::generatePrototypes);
+        buffer.addLine();
+        nativeTypes.forEach(this::generateReader);
+        generateDefine();
+
+        // Generate the complete file:
+        buffer = bufferProvider.get();
+        buffer.setFileName(SOURCE_FILE);
+        buffer.addLine("#include <ruby.h>");
+        buffer.addLine();
+        buffer.addLine("#include <stdbool.h>");
+        buffer.addLine("#include <stdlib.h>");
+        buffer.addLine("#include <string.h>");
+        buffer.addLine();
+        buffer.addLine("#include \"ov_module.h\"");
+        buffer.addLine("#include \"ov_xml_reader.h\"");
+        buffer.addLine("#include \"ov_readers.h\"");
+        buffer.addLine();
+        buffer.addComment("Module:");
+        buffer.addLine("VALUE ov_readers_module;");
+        buffer.addLine();
+        buffer.addComment("Classes, loaded the first time that they are used:");
+        classes.forEach(variable -> buffer.addLine("static VALUE %1$s = Qnil;", variable));
+        buffer.addLine();
+        if (!enums.isEmpty()) {
+            buffer.addComment("Values of the enumerated types, loaded the first time that they are used:");
+            enums.forEach(variable -> buffer.addLine("static VALUE %1$s = Qnil;", variable));
+            buffer.addLine();
+        }
+        buffer.addComment("Method identifiers:");
+        ids.keySet().forEach(variable -> buffer.addLine("static ID %1$s;", variable));
+        buffer.addLine();
+        generateHelpers();
+        buffer.addLines(functions);
+        writeBuffer(dir, SOURCE_FILE);
+    }
+
+    private void generateHelpers() {
+        buffer.addComment("Type of the functions that read the inner elements:");
+        buffer.addLine("typedef void (*ov_readers_handler)(VALUE reader, VALUE object);");
+        buffer.addLine();
+        buffer.addComment("Entries of the tables that contain the handlers for the tags of the inner elements:");
+        buffer.addLine("typedef struct {");
+        buffer.addLine(  "const char* tag;");
+        buffer.addLine(  "ov_readers_handler handler;");
+        buffer.addLine("} ov_readers_entry;");
+        buffer.addLine();
+        if (tables) {
+            generateTableHelpers();
+        }
+        buffer.addComment("Returns the class with the given name, loading it the first time:");
+        buffer.addLine("static VALUE ov_readers_get_class(VALUE* cache, const char* name) {");
+        buffer.addLine(  "if (NIL_P(*cache)) {");
+        buffer.addLine(    "*cache = rb_const_get(ov_module, rb_intern(name));");
+        buffer.addLine(  "}");
+        buffer.addLine(  "return *cache;");
+        buffer.addLine("}");
+        buffer.addLine();
+        if (!enums.isEmpty()) {
+            generateEnumHelpers();
+        }
+        buffer.addComment("Checks that the reader is an instance of the reader class of the extension:");
+        buffer.addLine("static void ov_readers_check_reader(VALUE reader) {");
+        buffer.addLine(  "if (!rb_obj_is_kind_of(reader, ov_xml_reader_class)) {");
+        buffer.addLine(    "rb_raise(rb_eTypeError, \"The reader must be an instance of 'XmlReader'\");");
+        buffer.addLine(  "}");
+        buffer.addLine("}");
+        buffer.addLine();
+    }
+
+    private void generateTableHelpers() {
+        buffer.addComment("Compares a tag with an entry, used to find handlers with a binary search:");
+        buffer.addLine("static int ov_readers_compare(const void* tag, const void* entry) {");
+        buffer.addLine(  "return strcmp((const char*) tag, ((const ov_readers_entry*) entry)->tag);");
+        buffer.addLine("}");
+        buffer.addLine();
+        buffer.addComment("Finds a handler for the given tag, or returns NULL if there is no such handler:");
+        buffer.addLine(
+            "static ov_readers_handler ov_readers_find(const ov_readers_entry* table, size_t size, const char* tag) {"
+        );
+        buffer.addLine(  "const ov_readers_entry* entry;");
+        buffer.addLine();
+        buffer.addLine(  "entry = bsearch(tag, table, size, sizeof(ov_readers_entry), ov_readers_compare);");
+        buffer.addLine(  "return entry != NULL? entry->handler: NULL;");
+        buffer.addLine("}");
+        buffer.addLine();
+    }
+
+    private void generateEnumHelpers() {
+        buffer.addComment("Returns the table of values of the given enumerated type, loading it the first time:");
+        buffer.addLine("static VALUE ov_readers_get_values(VALUE* cache, const char* name) {");
+        buffer.addLine(  "if (NIL_P(*cache)) {");
+        buffer.addLine(    "*cache = rb_const_get(rb_const_get(ov_module, rb_intern(name)), rb_intern(\"VALUES\"));");
+        buffer.addLine(  "}");
+        buffer.addLine(  "return *cache;");
+        buffer.addLine("}");
+        buffer.addLine();
+        buffer.addComment("Replaces the text of an enumerated value with the frozen constant that has the same text:");
+        buffer.addLine("static VALUE ov_readers_map_enum(VALUE text, VALUE values) {");
+        buffer.addLine(  "if (NIL_P(text)) {");
+        buffer.addLine(    "return Qnil;");
+        buffer.addLine(  "}");
+        buffer.addLine(  "return rb_hash_lookup2(values, text, text);");
+        buffer.addLine("}");
+        buffer.addLine();
+        buffer.addComment("Replaces the texts of a list of enumerated values with the frozen constants:");
+        buffer.addLine("static VALUE ov_readers_map_enums(VALUE list, VALUE values) {");
+        buffer.addLine(  "long i;");
+        buffer.addLine();
+        buffer.addLine(  "for (i = 0; i < RARRAY_LEN(list); i++) {");
+        buffer.addLine(    "rb_ary_store(list, i, ov_readers_map_enum(rb_ary_entry(list, i), values));");
+        buffer.addLine(  "}");
+        buffer.addLine(  "return list;");
+        buffer.addLine("}");
+        buffer.addLine();
+    }
+
+    private void generatePrototypes(StructType type) {
+        String prefix = getPrefix(type);
+        buffer.addLine("static VALUE %1$s_read_one(VALUE reader);", prefix);
+        buffer.addLine("static VALUE %1$s_read_many(VALUE reader);", prefix);
+    }
+
+    private void generateReader(StructType type) {
+        ModelIndex.StructIndex struct = index.getStruct(type);
+        String prefix = getPrefix(type);
+        buffer.addComment("Reader for the '%1$s' type:", struct.getSingularTag());
+        buffer.addLine();
+
+        // Generate the handlers of the inner elements, and the sorted table that contains them. Note that if there
+        // are repeated tags the last one is used, like in the hash of the Ruby reader:
+        Map<String, String> handlers = new TreeMap<>();
+        struct.getAttributes().forEach(member -> generateElementHandler(type, member, handlers));
+        struct.getLinks().forEach(member -> generateElementHandler(type, member, handlers));
+        if (!struct.getListLinks().isEmpty()) {
+            String handler = prefix + "_read_link";
+            buffer.addLine("static void %1$s(VALUE reader, VALUE object) {", handler);
+            buffer.addLine(
+                "rb_funcall(%1$s, %2$s, 2, reader, object);",
+                getClass(rubyNames.getReaderName(type)),
+                getId("read_link")
+            );
+            buffer.addLine("}");
+            buffer.addLine();
+            handlers.put("link", handler);
+        }
+        if (!handlers.isEmpty()) {
+            tables = true;
+            buffer.addLine("static const ov_readers_entry %1$s_handlers[] = {", prefix);
+            handlers.forEach((tag, handler) -> buffer.addLine("{ \"%1$s\", %2$s },", tag, handler));
+            buffer.addLine("};");
+            buffer.addLine();
+        }
+
+        // Generate the names of the attributes, so that they can be fetched walking the attributes only once:
+        List<StructMember> attributes = Stream.concat(struct.getAttributes().stream(), struct.getLinks().stream())
+            .filter(member -> isPrimitiveOrEnum(member.getType()))
+            .collect(toList());
+        if (!attributes.isEmpty()) {
+            buffer.addLine("static const char* %1$s_attribute_names[] = {", prefix);
+            buffer.addLine("\"href\",");
+            attributes.forEach(member -> buffer.addLine("\"%1$s\",", index.getMember(member).getTag()));
+            buffer.addLine("};");
+            buffer.addLine();
+        }
+
+        // Generate the function that reads one instance:
+        buffer.addLine("static VALUE %1$s_read_one(VALUE reader) {", prefix);
+        buffer.addLine(  "VALUE object;");
+        if (!attributes.isEmpty()) {
+            buffer.addLine("VALUE values[%1$d];", attributes.size() + 1);
+        }
+        if (!handlers.isEmpty()) {
+            buffer.addLine("ov_readers_handler handler;");
+        }
+        buffer.addLine(  "bool empty;");
+        buffer.addLine();
+        buffer.addLine(  "/* Do nothing if there aren't more tags: */");
+        buffer.addLine(  "if (!RTEST(ov_xml_reader_forward(reader))) {");
+        buffer.addLine(    "return Qnil;");
+        buffer.addLine(  "}");
+        buffer.addLine();
+        buffer.addLine(  "/* Create the object: */");
+        buffer.addLine(  "object = rb_class_new_instance(0, NULL, %1$s);", getClass(rubyNames.getTypeName(type)));
+        buffer.addLine();
+        buffer.addLine(  "/* Process the attributes: */");
+        if (attributes.isEmpty()) {
+            buffer.addLine(
+                "rb_funcall(object, %1$s, 1, ov_xml_reader_get_attribute_value(reader, \"href\"));",
+                getId("href=")
+            );
+        }
+        else {
+            buffer.addLine(
+                "ov_xml_reader_get_attribute_values(reader, %1$d, %2$s_attribute_names, values);",
+                attributes.size() + 1,
+                prefix
+            );
+            buffer.addLine("rb_funcall(object, %1$s, 1, values[0]);", getId("href="));
+            for (int i = 0; i < attributes.size(); i++) {
+                StructMember member = attributes.get(i);
+                String property = rubyNames.getMemberStyleName(member.getName());
+                String value = String.format("values[%1$d]", i + 1);
+                if (member.getType() instanceof EnumType) {
+                    value = String.format("ov_readers_map_enum(%1$s, %2$s)", value, getValues(member.getType()));
+                }
+                buffer.addLine("if (!NIL_P(values[%1$d])) {", i + 1);
+                buffer.addLine(  "rb_funcall(object, %1$s, 1, %2$s);", getId(property + "="), value);
+                buffer.addLine("}");
+            }
+        }
+        buffer.addLine();
+        buffer.addLine(  "/* Discard the start tag: */");
+        buffer.addLine(  "empty = RTEST(ov_xml_reader_empty_element(reader));");
+        buffer.addLine(  "ov_xml_reader_read(reader);");
+        buffer.addLine(  "if (empty) {");
+        buffer.addLine(    "return object;");
+        buffer.addLine(  "}");
+        buffer.addLine();
+        buffer.addLine(  "/* Process the inner elements: */");
+        if (!handlers.isEmpty()) {
+            buffer.addLine("while (RTEST(ov_xml_reader_forward(reader))) {");
+            buffer.addLine(
+                "handler = ov_readers_find(%1$s_handlers, %2$d, ov_xml_reader_get_node_name(reader));",
+                prefix,
+                handlers.size()
+            );
+            buffer.addLine(  "if (handler == NULL) {");
+            buffer.addLine(    "ov_xml_reader_next_element(reader);");
+            buffer.addLine(  "}");
+            buffer.addLine(  "else {");
+            buffer.addLine(    "handler(reader, object);");
+            buffer.addLine(  "}");
+            buffer.addLine("}");
+        }
+        else {
+            buffer.addLine("ov_xml_reader_next_element(reader);");
+        }
+        buffer.addLine();
+        buffer.addLine(  "/* Discard the end tag: */");
+        buffer.addLine(  "ov_xml_reader_read(reader);");
+        buffer.addLine();
+        buffer.addLine(  "return object;");
+        buffer.addLine("}");
+        buffer.addLine();
+
+        // Generate the function that reads many instances:
+        buffer.addLine("static VALUE %1$s_read_many(VALUE reader) {", prefix);
+        buffer.addLine(  "VALUE list;");
+        buffer.addLine(  "bool empty;");
+        buffer.addLine();
+        buffer.addLine(  "/* Do nothing if there aren't more tags: */");
+        buffer.addLine(  "list = rb_class_new_instance(0, NULL, %1$s);", getClass(rubyNames.getBaseListName()));
+        buffer.addLine(  "if (!RTEST(ov_xml_reader_forward(reader))) {");
+        buffer.addLine(    "return list;");
+        buffer.addLine(  "}");
+        buffer.addLine();
+        buffer.addLine(  "/* Process the attributes: */");
+        buffer.addLine(
+            "rb_funcall(list, %1$s, 1, ov_xml_reader_get_attribute_value(reader, \"href\"));",
+            getId("href=")
+        );
+        buffer.addLine();
+        buffer.addLine(  "/* Discard the start tag: */");
+        buffer.addLine(  "empty = RTEST(ov_xml_reader_empty_element(reader));");
+        buffer.addLine(  "ov_xml_reader_read(reader);");
+        buffer.addLine(  "if (empty) {");
+        buffer.addLine(    "return list;");
+        buffer.addLine(  "}");
+        buffer.addLine();
+        buffer.addLine(  "/* Process the inner elements: */");
+        buffer.addLine(  "while (RTEST(ov_xml_reader_forward(reader))) {");
+        buffer.addLine(    "rb_funcall(list, %1$s, 1, %2$s_read_one(reader));", getId("<<"), prefix);
+        buffer.addLine(  "}");
+        buffer.addLine();
+        buffer.addLine(  "/* Discard the end tag: */");
+        buffer.addLine(  "ov_xml_reader_read(reader);");
+        buffer.addLine();
+        buffer.addLine(  "return list;");
+        buffer.addLine("}");
+        buffer.addLine();
+
+        // Generate the functions that implement the methods, checking the type of the reader, as the rest of the
+        // functions assume that it is correct:
+        buffer.addLine("static VALUE %1$s_read_one_method(VALUE self, VALUE reader) {", prefix);
+        buffer.addLine(  "ov_readers_check_reader(reader);");
+        buffer.addLine(  "return %1$s_read_one(reader);", prefix);
+        buffer.addLine("}");
+        buffer.addLine();
+        buffer.addLine("static VALUE %1$s_read_many_method(VALUE self, VALUE reader) {", prefix);
+        buffer.addLine(  "ov_readers_check_reader(reader);");
+        buffer.addLine(  "return %1$s_read_many(reader);", prefix);
+        buffer.addLine("}");
+        buffer.addLine();
+    }
+
+    private void generateElementHandler(StructType type, StructMember member, Map<String, String> handlers) {
+        String property = rubyNames.getMemberStyleName(member.getName());
+        String tag = index.getMember(member).getTag();
+        String handler = getPrefix(type) + "_handle_" + tag;
+        String value = getReadValue(member.getType());
+        buffer.addLine("static void %1$s(VALUE reader, VALUE object) {", handler);
+        if (value != null) {
+            buffer.addLine("VALUE value;");
+            buffer.addLine();
+            buffer.addLine("value = %1$s;", value);
+            buffer.addLine("rb_funcall(object, %1$s, 1, value);", getId(property + "="));
+        }
+        else {
+            buffer.addLine("ov_xml_reader_next_element(reader);");
+        }
+        buffer.addLine("}");
+        buffer.addLine();
+        handlers.put(tag, handler);
+    }
+
+    private String getReadValue(Type type) {
+        if (type instanceof PrimitiveType) {
+            return getReadPrimitive((PrimitiveType) type, false);
+        }
+        else if (type instanceof EnumType) {
+            return String.format("ov_readers_map_enum(ov_xml_reader_read_element(reader), %1$s)", getValues(type));
+        }
+        else if (type instanceof StructType) {
+            return getReadStruct((StructType) type, "one");
+        }
+        else if (type instanceof ListType) {
+            Type elementType = ((ListType) type).getElementType();
+            if (elementType instanceof PrimitiveType) {
+                return getReadPrimitive((PrimitiveType) elementType, true);
+            }
+            else if (elementType instanceof EnumType) {
+                return String.format(
+                    "ov_readers_map_enums(ov_xml_reader_read_elements(reader), %1$s)",
+                    getValues(elementType)
+                );
+            }
+            else if (elementType instanceof StructType) {
+                return getReadStruct((StructType) elementType, "many");
+            }
+        }
+        return null;
+    }
+
+    private String getReadPrimitive(PrimitiveType type, boolean list) {
+        // Strings are read directly, and the rest of the primitive types are converted by the methods of the Ruby
+        // reader, so that the results are the same:
+        Model model = type.getModel();
+        String name;
+        if (type == model.getStringType()) {
+            return list? "ov_xml_reader_read_elements(reader)": "ov_xml_reader_read_element(reader)";
+        }
+        else if (type == model.getBooleanType()) {
+            name = "boolean";
+        }
+        else if (type == model.getIntegerType()) {
+            name = "integer";
+        }
+        else if (type == model.getDecimalType()) {
+            name = "decimal";
+        }
+        else if (type == model.getDateType()) {
+            name = "date";
+        }
+        else {
+            return null;
+        }
+        return String.format(
+            "rb_funcall(%1$s, %2$s, 1, reader)",
+            getClass(rubyNames.getBaseReaderName()),
+            getId("read_" + name + (list? "s": ""))
+        );
+    }
+
+    private String getReadStruct(StructType type, String suffix) {
+        // Types that have native readers are read calling directly the corresponding function, the rest calling the
+        // Ruby reader:
+        if (isNative(type)) {
+            return String.format("%1$s_read_%2$s(reader)", getPrefix(type), suffix);
+        }
+        return String.format(
+            "rb_funcall(%1$s, %2$s, 1, reader)",
+            getClass(rubyNames.getReaderName(type)),
+            getId("read_" + suffix)
+        );
+    }
+
+    private void generateDefine() {
+        buffer.addLine("void ov_readers_define(void) {");
+        buffer.addLine(  "/* Define the module: */");
+        buffer.addLine(  "ov_readers_module = rb_define_module_under(ov_module, \"NativeReaders\");");
+        buffer.addLine();
+        buffer.addLine(  "/* Define the methods: */");
+        nativeTypes.forEach(type -> {
+            String prefix = getPrefix(type);
+            String tag = index.getStruct(type).getSingularTag();
+            buffer.addLine(
+                "rb_define_singleton_method(ov_readers_module, \"read_%1$s_one\", %2$s_read_one_method, 1);",
+                tag,
+                prefix
+            );
+            buffer.addLine(
+                "rb_define_singleton_method(ov_readers_module, \"read_%1$s_many\", %2$s_read_many_method, 1);",
+                tag,
+                prefix
+            );
+        });
+        buffer.addLine();
+        buffer.addLine(  "/* Prevent collection of the cached classes and tables of values: */");
+        classes.forEach(variable -> buffer.addLine("rb_gc_register_address(&%1$s);", variable));
+        enums.forEach(variable -> buffer.addLine("rb_gc_register_address(&%1$s);", variable));
+        buffer.addLine();
+        buffer.addLine(  "/* Create method identifiers: */");
+        ids.forEach((variable, method) -> buffer.addLine("%1$s = rb_intern(\"%2$s\");", variable, method));
+        buffer.addLine("}");
+    }
+
+    private boolean isPrimitiveOrEnum(Type type) {
+        return type instanceof PrimitiveType || type instanceof EnumType;
+    }
+
+    /**
+     * Returns the prefix used for the names of the functions that read the given type, for example
+     * {@code ov_readers_vm}.
+     */
+    private String getPrefix(StructType type) {
+        return "ov_readers_" + index.getStruct(type).getSingularTag();
+    }
+
+    /**
+     * Returns the expression that gets the given class, loading and caching it the first time that it is used.
+     */
+    private String getClass(RubyName name) {
+        String fileName = name.getFileName();
+        String variable = "ov_readers_" + fileName.substring(fileName.lastIndexOf('/') + 1) + "_class";
+        classes.add(variable);
+        return String.format("ov_readers_get_class(&%1$s, \"%2$s\")", variable, name.getClassName());
+    }
+
+    /**
+     * Returns the expression that gets the table of values of the given enumerated type, loading and caching it the
+     * first time that it is used.
+     */
+    private String getValues(Type type) {
+        RubyName name = rubyNames.getTypeName(type);
+        String fileName = name.getFileName();
+        String variable = "ov_readers_" + fileName.substring(fileName.lastIndexOf('/') + 1) + "_values";
+        enums.add(variable);
+        return String.format("ov_readers_get_values(&%1$s, \"%2$s\")", variable, name.getClassName());
+    }
+
+    /**
+     * Returns the name of the variable that contains the identifier of the given method, for example
+     * {@code NAME_SET_ID} for {@code name=}.
+     */
+    private String getId(String method) {
+        String variable;
+        if (method.equals("<<")) {
+            variable = "APPEND_ID";
+        }
+        else if (method.endsWith("=")) {
+            variable = method.substring(0, method.length() - 1).toUpperCase() + "_SET_ID";
+        }
+        else {
+            variable = method.toUpperCase() + "_ID";
+        }
+        ids.put(variable, method);
+        return variable;
+    }
+}
@@ -0,0 +1,282 @@
+/*
+Copyright (c) 2016 Red Hat, Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.ovirt.sdk.ruby;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.ovirt.api.metamodel.concepts.Model;
+
+/**
+ * This class collects the metrics of a run of the tool: how long it took to load the model and to run each of the
+ * generators, and how many files, lines and bytes each generator wrote. The metrics can then be saved to a JSON report
+ * that can be used to compare the cost of generating the SDK for different versions of the model.
+ *
+ * The metrics of the files written by a generator are attributed to it using a thread local variable, so they are
+ * correct also when the generators run concurrently. Each generator run is also tagged with the target that it was
+ * writing to, for example {@code docs} or {@code out}, as the same generator runs once for each target. The numbers of
+ * files written, skipped and removed, taken from the manifest of the output directory, are also recorded for each
+ * target.
+ */
+@ApplicationScoped
+public class GeneratorMetrics {
+    // Reference to the objects that contain the metrics collected by other parts of the tool:
+    @Inject private RubyNames rubyNames;
+    @Inject private GeneratorOptions options;
+    @Inject private OutputManifest manifest;
+
+    // The metrics of the loading of the model:
+    private long modelTime;
+    private boolean modelCached;
+
+    // The metrics of each generator, in the order they were started:
+    private final List<Run> runs = new ArrayList<>();
+
+    // The counters of the manifest of each target, in the order they were recorded:
+    private final List<Output> outputs = new ArrayList<>();
+
+    // The target of the generators started from now on:
+    private volatile String target;
+
+    // The metrics of the generator running in the current thread:
+    private final ThreadLocal<Run> current = new ThreadLocal<>();
+
+    /**
+     * Records the time that it took to load the model, in nanoseconds, and if it was loaded from the cache.
+     */
+    public void setRubyNames(RubyNames newRubyNames) {
+        rubyNames = newRubyNames;
+    }
+
+    public void setOptions(GeneratorOptions newOptions) {
+        options = newOptions;
+    }
+
+    public void setManifest(OutputManifest newManifest) {
+        manifest = newManifest;
+    }
+
+    public void recordModel(long time, boolean cached) {
+        modelTime = time;
+        modelCached = cached;
+    }
+
+    /**
+     * Discards the metrics of the generators that have already run, so that they don't accumulate when the tool runs
+     * the generators repeatedly, as it does in watch mode.
+     */
+    public void reset() {
+        synchronized (runs) {
+            runs.clear();
+        }
+        synchronized (outputs) {
+            outputs.clear();
+        }
+        target = null;
+    }
+
+    /**
+     * Sets the target that will be used to tag the generators started from now on.
+     *
+     * @param newTarget the name of the target, for example {@code docs} or {@code out}
+     */
+    public void setTarget(String newTarget) {
+        target = newTarget;
+    }
+
+    /**
+     * Runs the given generator, measuring the time that it takes and attributing to it the files written by the
+     * calling thread in the meantime.
+     */
+    public void generate(RubyGenerator generator, Model model) throws IOException {
+        Run run = new Run(getGeneratorName(generator), target);
+        synchronized (runs) {
+            runs.add(run);
+        }
+        current.set(run);
+        long start = System.nanoTime();
+        try {
+            generator.generate(model);
+        }
+        finally {
+            run.time = System.nanoTime() - start;
+            current.remove();
+        }
+    }
+
+    /**
+     * Records that a file has been written. If no generator is running in the calling thread the file is ignored.
+     *
+     * @param lines the number of lines of the file
+     * @param bytes the size of the file in bytes
+     * @param time the time that it took to write the file, in nanoseconds
+     */
+    public void recordWrite(int lines, long bytes, long time) {
+        Run run = current.get();
+        if (run != null) {
+            run.files++;
+            run.lines += lines;
+            run.bytes += bytes;
+            run.writeTime += time;
+        }
+    }
+
+    /**
+     * Records the numbers of files written, skipped and removed in the current target. This should be called when the
+     * generators have finished and the manifest has been saved.
+     */
+    public void recordFiles() {
+        Output output = new Output(
+            target,
+            manifest.getWrittenCount(),
+            manifest.getSkippedCount(),
+            manifest.getRemovedCount()
+        );
+        synchronized (outputs) {
+            outputs.add(output);
+        }
+    }
+
+    /**
+     * Writes the collected metrics, together with the sizes of the model, to the given file, in JSON format.
+     *
+     * @param file the file where the report will be written
+     * @param model the model used by the generators
+     * @param threads the number of threads used to run the generators
+     * @throws IOException if something fails while writing the file
+     */
+    public void writeReport(File file, Model model, int threads) throws IOException {
+        JsonBuffer json = new JsonBuffer();
+        json.beginObject();
+        json.name("version").value(rubyNames.getVersion());
+        json.name("threads").value(threads);
+        json.name("streaming").value(options.isStreaming());
+
+        // Model:
+        json.name("model").beginObject();
+        json.name("time").number(millis(modelTime));
+        json.name("cached").value(modelCached);
+        json.name("types").value(model.getTypes().size());
+        json.name("services").value(model.getServices().size());
+        json.name("methods").value(model.services().mapToLong(x -> x.getMethods().size()).sum());
+        json.name("locators").value(model.services().mapToLong(x -> x.getLocators().size()).sum());
+        json.endObject();
+
+        // Names:
+        json.name("names").beginObject();
+        json.name("hits").value(rubyNames.getCacheHits());
+        json.name("misses").value(rubyNames.getCacheMisses());
+        json.endObject();
+
+        // Files:
+        json.name("files").beginArray();
+        synchronized (outputs) {
+            for (Output output : outputs) {
+                json.beginObject();
+                json.name("target").value(output.target);
+                json.name("written").value(output.written);
+                json.name("skipped").value(output.skipped);
+                json.name("removed").value(output.removed);
+                json.endObject();
+            }
+        }
+        json.endArray();
+
+        // Generators:
+        json.name("generators").beginArray();
+        synchronized (runs) {
+            for (Run run : runs) {
+                json.beginObject();
+                json.name("name").value(run.name);
+                json.name("target").value(run.target);
+                json.name("time").number(millis(run.time));
+                json.name("files").value(run.files);
+                json.name("lines").value(run.lines);
+                json.name("bytes").value(run.bytes);
+                json.name("writeTime").number(millis(run.writeTime));
+                json.endObject();
+            }
+        }
+        json.endArray();
+
+        json.endObject();
+        Files.write(file.toPath(), json.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns the name of the generator used in the report, which is the simple name of its class. The generators may
+     * be wrapped by proxies created by the CDI container, so the name is taken from the first class of the hierarchy
+     * that isn't synthetic.
+     */
+    private static String getGeneratorName(RubyGenerator generator) {
+        Class<?> type = generator.getClass();
+        while (type.isSynthetic() || type.getSimpleName().contains("$")) {
+            type = type.getSuperclass();
+        }
+        String name = type.getSimpleName();
+        return !name.isEmpty()? name: type.getName();
+    }
+
+    /**
+     * Converts the given number of nanoseconds to a decimal number of milliseconds.
+     */
+    private static String millis(long nanos) {
+        return String.format(Locale.ROOT, "%.3f", nanos / 1e6);
+    }
+
+    /**
+     * The metrics of one generator.
+     */
+    private static class Run {
+        private final String name;
+        private final String target;
+        private long time;
+        private int files;
+        private long lines;
+        private long bytes;
+        private long writeTime;
+
+        Run(String name, String target) {
+            this.name = name;
+            this.target = target;
+        }
+    }
+
+    /**
+     * The counters of the manifest of one target.
+     */
+    private static class Output {
+        private final String target;
+        private final int written;
+        private final int skipped;
+        private final int removed;
+
+        Output(String target, int written, int skipped, int removed) {
+            this.target = target;
+            this.written = written;
+            this.skipped = skipped;
+            this.removed = removed;
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+Copyright (c) 2016 Red Hat, Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.ovirt.sdk.ruby;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import javax.enterprise.context.ApplicationScoped;
+
+/**
+ * This class contains the options that control how the generators produce the Ruby code. They are set by the tool
+ * from the command line before running the generators, and after that they are only read.
+ */
+@ApplicationScoped
+public class GeneratorOptions {
+    // Indicates if the buffers should write the lines to the output file as they are added, instead of keeping them in
+    // memory:
+    private boolean streaming;
+
+    // Indicates if each class should be generated in its own file, loaded on demand with autoload:
+    private boolean split;
+
+    // Indicates if the documentation comments should be left out of the generated code:
+    private boolean lean;
+
+    // Indicates if the members that are structs or lists of structs should be parsed only when they are used:
+    private boolean lazy;
+
+    // Indicates if the getters of the structs should be generated with "attr_reader", and the constructors should only
+    // call the setters of the keys present in the options hash:
+    private boolean fastStructs;
+
+    // Indicates if the values of the members of the structs should be kept in a hash containing only the members that
+    // have a value, instead of in one instance variable per member:
+    private boolean sparse;
+
+    // The directory where the C source of the extension will be generated, and the XML tags of the types whose readers
+    // will be generated in C:
+    private File extDir;
+    private Set<String> nativeReaders = Collections.emptySet();
+
+    /**
+     * Returns {@code true} if the buffers should write the generated lines to the output file as they are added,
+     * instead of keeping them in memory till the complete file is written.
+     */
+    public boolean isStreaming() {
+        return streaming;
+    }
+
+    /**
+     * Sets the streaming flag.
+     */
+    public void setStreaming(boolean newStreaming) {
+        streaming = newStreaming;
+    }
+
+    /**
+     * Returns {@code true} if each generated class should be written to its own file, and the usual files, like
+     * {@code types.rb}, should only contain the {@code autoload} declarations that load those files when the classes
+     * are used for the first time.
+     */
+    public boolean isSplit() {
+        return split;
+    }
+
+    /**
+     * Sets the split flag.
+     */
+    public void setSplit(boolean newSplit) {
+        split = newSplit;
+    }
+
+    /**
+     * Returns {@code true} if the documentation comments, including the Yard tags, should be left out of the
+     * generated code, so that it is faster to parse when it is loaded.
+     */
+    public boolean isLean() {
+        return lean;
+    }
+
+    /**
+     * Sets the lean flag.
+     */
+    public void setLean(boolean newLean) {
+        lean = newLean;
+    }
+
+    /**
+     * Returns {@code true} if the readers should keep the XML text of the members that are structs or lists of
+     * structs, and the getters of the types should parse it only when the member is used for the first time.
+     */
+    public boolean isLazy() {
+        return lazy;
+    }
+
+    /**
+     * Sets the lazy flag.
+     */
+    public void setLazy(boolean newLazy) {
+        lazy = newLazy;
+    }
+
+    /**
+     * Returns {@code true} if the getters of the structs should be generated with {@code attr_reader}, and the
+     * constructors should iterate the options hash, calling only the setters of the keys that are present.
+     */
+    public boolean isFastStructs() {
+        return fastStructs;
+    }
+
+    /**
+     * Sets the fast structs flag.
+     */
+    public void setFastStructs(boolean newFastStructs) {
+        fastStructs = newFastStructs;
+    }
+
+    /**
+     * Returns {@code true} if the structs should keep the values of their members in a hash that contains only the
+     * members that aren't {@code nil}, instead of in one instance variable per member.
+     */
+    public boolean isSparse() {
+        return sparse;
+    }
+
+    /**
+     * Sets the sparse flag.
+     */
+    public void setSparse(boolean newSparse) {
+        sparse = newSparse;
+    }
+
+    /**
+     * Returns the directory where the C source of the extension should be generated, or {@code null} if it shouldn't
+     * be generated.
+     */
+    public File getExtDir() {
+        return extDir;
+    }
+
+    /**
+     * Sets the directory where the C source of the extension should be generated.
+     */
+    public void setExtDir(File newExtDir) {
+        extDir = newExtDir;
+    }
+
+    /**
+     * Returns {@code true} if the reader for the type with the given XML tag, for example {@code vm}, should be
+     * implemented in C, in addition to the Ruby implementation that is used when the extension doesn't contain it.
+     */
+    public boolean isNativeReader(String tag) {
+        return nativeReaders.contains(tag);
+    }
+
+    /**
+     * Returns the XML tags of the types whose readers should be implemented in C.
+     */
+    public Set<String> getNativeReaders() {
+        return nativeReaders;
+    }
+
+    /**
+     * Sets the XML tags of the types whose readers should be implemented in C.
+     */
+    public void setNativeReaders(Set<String> newNativeReaders) {
+        nativeReaders = Collections.unmodifiableSet(new HashSet<>(newNativeReaders));
+    }
+}
@@ -0,0 +1,173 @@
+/*
+Copyright (c) 2016 Red Hat, Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.ovirt.sdk.ruby;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/**
+ * This class is a buffer intended to simplify generation of small JSON documents, like the metrics report. It takes
+ * care of the indentation and of the commas that separate the members of objects and arrays.
+ */
+public class JsonBuffer {
+    // The text of the document:
+    private StringBuilder buffer = new StringBuilder();
+
+    // For each open object or array, a flag indicating if it is still empty:
+    private Deque<Boolean> empty = new ArrayDeque<>();
+
+    // Indicates if the next value is the value of a member, so it doesn't need a separator:
+    private boolean member;
+
+    public JsonBuffer beginObject() {
+        return begin('{');
+    }
+
+    public JsonBuffer endObject() {
+        return end('}');
+    }
+
+    public JsonBuffer beginArray() {
+        return begin('[');
+    }
+
+    public JsonBuffer endArray() {
+        return end(']');
+    }
+
+    /**
+     * Writes the name of a member of the current object. It must be followed by the value of the member.
+     */
+    public JsonBuffer name(String name) {
+        separate();
+        string(name);
+        buffer.append(": ");
+        member = true;
+        return this;
+    }
+
+    public JsonBuffer value(String value) {
+        separate();
+        if (value != null) {
+            string(value);
+        }
+        else {
+            buffer.append("null");
+        }
+        return this;
+    }
+
+    public JsonBuffer value(long value) {
+        return number(Long.toString(value));
+    }
+
+    public JsonBuffer value(boolean value) {
+        separate();
+        buffer.append(value);
+        return this;
+    }
+
+    /**
+     * Writes a number that has already been converted to text, for example with a fixed number of decimals.
+     */
+    public JsonBuffer number(String value) {
+        separate();
+        buffer.append(value);
+        return this;
+    }
+
+    private JsonBuffer begin(char bracket) {
+        separate();
+        buffer.append(bracket);
+        empty.push(Boolean.TRUE);
+        return this;
+    }
+
+    private JsonBuffer end(char bracket) {
+        boolean wasEmpty = empty.pop();
+        if (!wasEmpty) {
+            newLine();
+        }
+        buffer.append(bracket);
+        if (empty.isEmpty()) {
+            buffer.append('\n');
+        }
+        return this;
+    }
+
+    /**
+     * Writes the comma and the line break that go before a value, unless it is the value of a member or the first
+     * value of the document.
+     */
+    private void separate() {
+        if (member) {
+            member = false;
+            return;
+        }
+        if (!empty.isEmpty()) {
+            if (!empty.pop()) {
+                buffer.append(',');
+            }
+            empty.push(Boolean.FALSE);
+            newLine();
+        }
+    }
+
+    private void newLine() {
+        buffer.append('\n');
+        for (int i = 0; i < empty.size(); i++) {
+            buffer.append("  ");
+        }
+    }
+
+    private void string(String value) {
+        buffer.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            switch (c) {
+            case '"':
+                buffer.append("\\\"");
+                break;
+            case '\\':
+                buffer.append("\\\\");
+                break;
+            case '\n':
+                buffer.append("\\n");
+                break;
+            case '\r':
+                buffer.append("\\r");
+                break;
+            case '\t':
+                buffer.append("\\t");
+                break;
+            default:
+                if (c < 0x20) {
+                    buffer.append(String.format("\\u%04x", (int) c));
+                }
+                else {
+                    buffer.append(c);
+                }
+            }
+        }
+        buffer.append('"');
+    }
+
+    @Override
+    public String toString() {
+        return buffer.toString();
+    }
+}
@@ -0,0 +1,184 @@
+/*
+Copyright (c) 2016 Red Hat, Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.ovirt.sdk.ruby;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import javax.annotation.PostConstruct;
+import javax.inject.Inject;
+import javax.inject.Provider;
+
+import org.ovirt.api.metamodel.tool.BuiltinTypes;
+import org.ovirt.api.metamodel.tool.Names;
+import org.ovirt.api.metamodel.tool.SchemaNames;
+import org.ovirt.api.metamodel.tool.Words;
+
+/**
+ * This class is an entry point of the tool that doesn't start a CDI container. It creates the tool, the generators
+ * and the objects that they use explicitly, so it has to be updated when a generator or a dependency is added.
+ */
+public class Launcher {
+    public static void main(String[] args) throws Exception {
+        // The classes of the metamodel don't have setters for their dependencies, so they are populated with the
+        // injectFields method:
+        Words words = new Words();
+        injectFields(words);
+        Names names = new Names();
+        injectFields(names, words);
+        SchemaNames schemaNames = new SchemaNames();
+        injectFields(schemaNames, words, names);
+        BuiltinTypes builtinTypes = new BuiltinTypes();
+        injectFields(builtinTypes, words, names);
+
+        // Create the objects shared by the generators:
+        RubyReservedWords reservedWords = new RubyReservedWords();
+        reservedWords.init();
+        RubyNames rubyNames = new RubyNames();
+        rubyNames.setWords(words);
+        rubyNames.setReservedWords(reservedWords.getWords());
+        YardDoc yardDoc = new YardDoc();
+        yardDoc.setRubyNames(rubyNames);
+        GeneratorOptions options = new GeneratorOptions();
+        OutputManifest manifest = new OutputManifest();
+        GeneratorMetrics metrics = new GeneratorMetrics();
+        metrics.setRubyNames(rubyNames);
+        metrics.setOptions(options);
+        metrics.setManifest(manifest);
+        ModelIndexer modelIndexer = new ModelIndexer();
+        modelIndexer.setNames(names);
+        modelIndexer.setSchemaNames(schemaNames);
+
+        // Each generator gets new buffers, like the dependent beans that the container creates:
+        Provider<RubyBuffer> rubyBuffers = () -> {
+            RubyBuffer buffer = new RubyBuffer();
+            buffer.setRubyNames(rubyNames);
+            buffer.setYardDoc(yardDoc);
+            buffer.setOptions(options);
+            buffer.setManifest(manifest);
+            buffer.setMetrics(metrics);
+            return buffer;
+        };
+        Provider<CBuffer> cBuffers = () -> {
+            CBuffer buffer = new CBuffer();
+            buffer.setManifest(manifest);
+            buffer.setMetrics(metrics);
+            return buffer;
+        };
+        RubyFiles rubyFiles = new RubyFiles();
+        rubyFiles.setRubyNames(rubyNames);
+        rubyFiles.setBufferProvider(rubyBuffers);
+
+        // Create the generators:
+        List<RubyGenerator> generators = new ArrayList<>();
+
+        TypesGenerator typesGenerator = new TypesGenerator();
+        typesGenerator.setRubyNames(rubyNames);
+        typesGenerator.setYardDoc(yardDoc);
+        typesGenerator.setModelIndexer(modelIndexer);
+        typesGenerator.setOptions(options);
+        typesGenerator.setBufferProvider(rubyBuffers);
+        typesGenerator.setRubyFiles(rubyFiles);
+        generators.add(typesGenerator);
+
+        ServicesGenerator servicesGenerator = new ServicesGenerator();
+        servicesGenerator.setRubyNames(rubyNames);
+        servicesGenerator.setYardDoc(yardDoc);
+        servicesGenerator.setModelIndexer(modelIndexer);
+        servicesGenerator.setOptions(options);
+        servicesGenerator.setBufferProvider(rubyBuffers);
+        servicesGenerator.setRubyFiles(rubyFiles);
+        generators.add(servicesGenerator);
+
+        ReadersGenerator readersGenerator = new ReadersGenerator();
+        readersGenerator.setRubyNames(rubyNames);
+        readersGenerator.setModelIndexer(modelIndexer);
+        readersGenerator.setOptions(options);
+        readersGenerator.setBufferProvider(rubyBuffers);
+        readersGenerator.setRubyFiles(rubyFiles);
+        generators.add(readersGenerator);
+
+        WritersGenerator writersGenerator = new WritersGenerator();
+        writersGenerator.setRubyNames(rubyNames);
+        writersGenerator.setModelIndexer(modelIndexer);
+        writersGenerator.setOptions(options);
+        writersGenerator.setBufferProvider(rubyBuffers);
+        writersGenerator.setRubyFiles(rubyFiles);
+        generators.add(writersGenerator);
+
+        VersionGenerator versionGenerator = new VersionGenerator();
+        versionGenerator.setRubyNames(rubyNames);
+        versionGenerator.setBufferProvider(rubyBuffers);
+        generators.add(versionGenerator);
+
+        CReadersGenerator cReadersGenerator = new CReadersGenerator();
+        cReadersGenerator.setRubyNames(rubyNames);
+        cReadersGenerator.setModelIndexer(modelIndexer);
+        cReadersGenerator.setOptions(options);
+        cReadersGenerator.setBufferProvider(cBuffers);
+        generators.add(cReadersGenerator);
+
+        // Create the tool and run it:
+        Tool tool = new Tool();
+        tool.setRubyNames(rubyNames);
+        tool.setGeneratorOptions(options);
+        tool.setManifest(manifest);
+        tool.setGenerators(generators);
+        tool.setBuiltinTypes(builtinTypes);
+        tool.setModelCache(new ModelCache());
+        tool.setMetrics(metrics);
+        tool.setFingerprints(new ModelFingerprints());
+        tool.run(args);
+    }
+
+    /**
+     * Assigns the fields of the given object that are annotated with {@link Inject} using the given dependencies,
+     * selected by type, and then calls the methods annotated with {@link PostConstruct}. Fails if a field can't be
+     * assigned, so that a new dependency of the metamodel is detected instead of causing a null pointer later.
+     */
+    private static void injectFields(Object bean, Object... dependencies) throws ReflectiveOperationException {
+        for (Class<?> type = bean.getClass(); type != Object.class; type = type.getSuperclass()) {
+            for (Field field : type.getDeclaredFields()) {
+                if (!field.isAnnotationPresent(Inject.class)) {
+                    continue;
+                }
+                Object value = null;
+                for (Object dependency : dependencies) {
+                    if (field.getType().isInstance(dependency)) {
+                        value = dependency;
+                        break;
+                    }
+                }
+                if (value == null) {
+                    throw new IllegalStateException(
+                        "Don't know how to populate field \"" + field.getName() + "\" of class \"" +
+                        type.getName() + "\""
+                    );
+                }
+                field.setAccessible(true);
+                field.set(bean, value);
+            }
+        }
+        for (Method method : bean.getClass().getDeclaredMethods()) {
+            if (method.isAnnotationPresent(PostConstruct.class)) {
+                method.setAccessible(true);
+                method.invoke(bean);
+            }
+        }
+    }
+}
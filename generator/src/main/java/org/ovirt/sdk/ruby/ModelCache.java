@@ -0,0 +1,284 @@
+/*
+Copyright (c) 2016 Red Hat, Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.ovirt.sdk.ruby;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.CodeSource;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import javax.enterprise.context.ApplicationScoped;
+
+import org.ovirt.api.metamodel.analyzer.ModelAnalyzer;
+import org.ovirt.api.metamodel.concepts.Model;
+import org.ovirt.api.metamodel.tool.BuiltinTypes;
+
+/**
+ * This class stores the result of the analysis of the model in a cache directory, so that later runs of the tool
+ * with the same model don't need to analyze it again. The name of each cached file is calculated from a hash of the
+ * content of the model files and of the versions of the code that creates the model (the analyzer, the concepts, the
+ * built-in types and this generator) so changes to any of them will result in a new analysis.
+ *
+ * The cached files are loaded into the tool, so the cache is only used when a directory is explicitly given, and that
+ * directory must belong to the user running the tool and mustn't be writable by other users. It is created with
+ * permissions only for that user if it doesn't exist. Each file starts with the key it was saved with, and a file that
+ * doesn't contain that key, that can't be read completely or that doesn't contain a model is treated as if it didn't
+ * exist, so the model is analyzed again.
+ */
+@ApplicationScoped
+public class ModelCache {
+    // The version of the format of the cached files, must be changed when the format changes:
+    private static final String FORMAT_VERSION = "3";
+
+    // The classes whose code affects the content of the analyzed model:
+    private static final Class<?>[] CODE_CLASSES = {
+        ModelAnalyzer.class,
+        Model.class,
+        BuiltinTypes.class,
+        ModelCache.class,
+    };
+
+    // The size of the buffer used to read files in order to calculate hashes:
+    private static final int HASH_BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Loads the cached model corresponding to the given model file or directory.
+     *
+     * @param modelFile the {@code .jar} file or directory containing the model source files
+     * @param cacheDir the directory containing the cache
+     * @return the cached model, or {@code null} if there is no cached model or it can't be loaded
+     */
+    public Model load(File modelFile, File cacheDir) {
+        File cacheFile = null;
+        try {
+            if (!checkDir(cacheDir, false)) {
+                return null;
+            }
+            String key = getKey(modelFile);
+            cacheFile = new File(cacheDir, key + ".model");
+            if (!cacheFile.isFile()) {
+                return null;
+            }
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(
+                    Files.newInputStream(cacheFile.toPath()), HASH_BUFFER_SIZE))) {
+                if (!key.equals(in.readUTF())) {
+                    throw new IOException("The key of the file doesn't match");
+                }
+                Object result = new ModelSerializer().read(in, cacheFile.length());
+                if (in.read() != -1) {
+                    throw new IOException("The file contains data after the model");
+                }
+                if (!(result instanceof Model)) {
+                    throw new IOException("The file doesn't contain a model");
+                }
+                System.out.println("Loaded model from cache file \"" + cacheFile.getAbsolutePath() + "\".");
+                return (Model) result;
+            }
+        }
+        catch (IOException | RuntimeException | LinkageError | StackOverflowError exception) {
+            System.out.println(
+                "Can't load model from cache file \"" + cacheFile + "\", it will be analyzed again: " +
+                exception.getMessage()
+            );
+        }
+        return null;
+    }
+
+    /**
+     * Saves the given model to the cache. Failures are reported, but they don't stop the tool, as the cache is just an
+     * optimization.
+     *
+     * @param model the analyzed model
+     * @param modelFile the {@code .jar} file or directory containing the model source files
+     * @param cacheDir the directory containing the cache
+     */
+    public void save(Model model, File modelFile, File cacheDir) {
+        File cacheFile = null;
+        Path temp = null;
+        try {
+            if (!checkDir(cacheDir, true)) {
+                return;
+            }
+            String key = getKey(modelFile);
+            cacheFile = new File(cacheDir, key + ".model");
+            temp = cacheDir.toPath().resolve("." + cacheFile.getName() + "." + UUID.randomUUID() + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                    Files.newOutputStream(temp), HASH_BUFFER_SIZE))) {
+                out.writeUTF(key);
+                new ModelSerializer().write(model, out);
+            }
+            Files.move(temp, cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            System.out.println("Saved model to cache file \"" + cacheFile.getAbsolutePath() + "\".");
+        }
+        catch (IOException | RuntimeException exception) {
+            System.out.println("Can't save model to cache file \"" + cacheFile + "\": " + exception.getMessage());
+        }
+        finally {
+            if (temp != null) {
+                try {
+                    Files.deleteIfExists(temp);
+                }
+                catch (IOException exception) {
+                    System.out.println("Can't delete temporary file \"" + temp + "\": " + exception.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Checks that the given cache directory can be trusted, and optionally creates it, with permissions only for the
+     * current user, if it doesn't exist. The problems found are reported, and the cache isn't used.
+     */
+    private boolean checkDir(File cacheDir, boolean create) throws IOException {
+        Path path = cacheDir.toPath();
+        boolean posix = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+        if (!Files.exists(path)) {
+            if (!create) {
+                return false;
+            }
+            if (posix) {
+                Files.createDirectories(path, PosixFilePermissions.asFileAttribute(
+                    PosixFilePermissions.fromString("rwx------")
+                ));
+            }
+            else {
+                Files.createDirectories(path);
+            }
+        }
+        if (!Files.isDirectory(path)) {
+            System.out.println("Cache directory \"" + cacheDir + "\" isn't a directory, it will be ignored.");
+            return false;
+        }
+        if (posix) {
+            PosixFileAttributes attributes = Files.readAttributes(path, PosixFileAttributes.class);
+            String user = System.getProperty("user.name");
+            if (!attributes.owner().getName().equals(user)) {
+                System.out.println(
+                    "Cache directory \"" + cacheDir + "\" doesn't belong to user \"" + user + "\", it will be " +
+                    "ignored."
+                );
+                return false;
+            }
+            Set<PosixFilePermission> permissions = attributes.permissions();
+            if (permissions.contains(PosixFilePermission.GROUP_WRITE) ||
+                permissions.contains(PosixFilePermission.OTHERS_WRITE)) {
+                System.out.println(
+                    "Cache directory \"" + cacheDir + "\" is writable by other users, it will be ignored."
+                );
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Calculates the key that identifies the given model file or directory, used as the name of the cache file.
+     */
+    private String getKey(File modelFile) throws IOException {
+        MessageDigest digest = createDigest();
+
+        // The version of the format and of the code that creates the model:
+        digest.update(FORMAT_VERSION.getBytes(StandardCharsets.UTF_8));
+        for (Class<?> clazz : CODE_CLASSES) {
+            digest.update(getCodeVersion(clazz).getBytes(StandardCharsets.UTF_8));
+        }
+
+        // The content of the model files. For directories include also the relative paths, and sort them, so that the
+        // result doesn't depend on the order of the files returned by the file system.
+        Path modelPath = modelFile.toPath();
+        if (modelFile.isDirectory()) {
+            List<Path> paths;
+            try (Stream<Path> stream = Files.walk(modelPath)) {
+                paths = stream.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+            }
+            for (Path path : paths) {
+                digest.update(modelPath.relativize(path).toString().getBytes(StandardCharsets.UTF_8));
+                updateDigest(digest, path);
+            }
+        }
+        else {
+            updateDigest(digest, modelPath);
+        }
+
+        StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest()) {
+            key.append(String.format("%02x", b));
+        }
+        return key.toString();
+    }
+
+    /**
+     * Returns a string that identifies the version of the code of the given class. This is the location, size and
+     * modification time of the {@code .jar} file that contains it. If the class has been loaded from a directory, as
+     * happens when running from the build tree, the class file itself is used, as the modification time of the
+     * directory doesn't change when files are modified. Note that the implementation version from the manifest isn't
+     * used, as it doesn't change between builds of the same snapshot.
+     */
+    private String getCodeVersion(Class<?> clazz) {
+        CodeSource source = clazz.getProtectionDomain().getCodeSource();
+        if (source != null && source.getLocation() != null) {
+            URL location = source.getLocation();
+            File file = new File(location.getPath());
+            if (file.isDirectory()) {
+                file = new File(file, clazz.getName().replace('.', File.separatorChar) + ".class");
+            }
+            return location + ":" + file.length() + ":" + file.lastModified();
+        }
+        return clazz.getName() + ":unknown";
+    }
+
+    private MessageDigest createDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        }
+        catch (NoSuchAlgorithmException exception) {
+            throw new IllegalStateException("Can't create message digest", exception);
+        }
+    }
+
+    private void updateDigest(MessageDigest digest, Path file) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HASH_BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+    }
+}
@@ -0,0 +1,176 @@
+/*
+Copyright (c) 2016 Red Hat, Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.ovirt.sdk.ruby;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.EnumMap;
+import java.util.Map;
+import javax.enterprise.context.ApplicationScoped;
+
+import org.ovirt.api.metamodel.concepts.Attribute;
+import org.ovirt.api.metamodel.concepts.EnumType;
+import org.ovirt.api.metamodel.concepts.EnumValue;
+import org.ovirt.api.metamodel.concepts.Link;
+import org.ovirt.api.metamodel.concepts.ListType;
+import org.ovirt.api.metamodel.concepts.Locator;
+import org.ovirt.api.metamodel.concepts.Method;
+import org.ovirt.api.metamodel.concepts.Model;
+import org.ovirt.api.metamodel.concepts.Name;
+import org.ovirt.api.metamodel.concepts.Parameter;
+import org.ovirt.api.metamodel.concepts.Service;
+import org.ovirt.api.metamodel.concepts.StructType;
+import org.ovirt.api.metamodel.concepts.Type;
+
+/**
+ * This class calculates fingerprints of the parts of the model, so that it is possible to check which parts changed
+ * after analyzing the model again. The fingerprints include only the information that the generators use: names,
+ * documentation, types of members and parameters, and the relationships between types and services. The order of
+ * the concepts is also included, as it affects the order of the generated code.
+ */
+@ApplicationScoped
+public class ModelFingerprints {
+    /**
+     * Calculates the fingerprints of the parts of the given model.
+     */
+    public Map<ModelPart, String> calculate(Model model) {
+        Map<ModelPart, String> result = new EnumMap<>(ModelPart.class);
+        Digest types = new Digest();
+        model.types().forEach(type -> addType(types, type));
+        result.put(ModelPart.TYPES, types.finish());
+        Digest services = new Digest();
+        model.services().forEach(service -> addService(services, service));
+        result.put(ModelPart.SERVICES, services.finish());
+        return result;
+    }
+
+    private void addType(Digest digest, Type type) {
+        digest.add(type.getClass().getSimpleName());
+        digest.add(type.getName());
+        digest.add(type.getDoc());
+        if (type instanceof StructType) {
+            StructType struct = (StructType) type;
+            addTypeReference(digest, struct.getBase());
+            for (Attribute attribute : struct.getAttributes()) {
+                digest.add(attribute.getName());
+                digest.add(attribute.getDoc());
+                addTypeReference(digest, attribute.getType());
+            }
+            for (Link link : struct.getLinks()) {
+                digest.add(link.getName());
+                digest.add(link.getDoc());
+                addTypeReference(digest, link.getType());
+            }
+        }
+        else if (type instanceof EnumType) {
+            for (EnumValue value : ((EnumType) type).getValues()) {
+                digest.add(value.getName());
+                digest.add(value.getDoc());
+            }
+        }
+        else if (type instanceof ListType) {
+            addTypeReference(digest, ((ListType) type).getElementType());
+        }
+    }
+
+    private void addService(Digest digest, Service service) {
+        digest.add(service.getName());
+        digest.add(service.getDoc());
+        digest.add(service.getBase() != null? service.getBase().getName(): null);
+        for (Method method : service.getMethods()) {
+            digest.add(method.getName());
+            digest.add(method.getDoc());
+            addParameters(digest, method.getParameters());
+        }
+        for (Locator locator : service.getLocators()) {
+            digest.add(locator.getName());
+            digest.add(locator.getDoc());
+            digest.add(locator.getService() != null? locator.getService().getName(): null);
+            addParameters(digest, locator.getParameters());
+        }
+    }
+
+    private void addParameters(Digest digest, Iterable<Parameter> parameters) {
+        for (Parameter parameter : parameters) {
+            digest.add(parameter.getName());
+            digest.add(parameter.getDoc());
+            digest.add(Boolean.toString(parameter.isIn()));
+            digest.add(Boolean.toString(parameter.isOut()));
+            addTypeReference(digest, parameter.getType());
+        }
+    }
+
+    /**
+     * Adds a reference to a type, which is its name, or the name of the element type for lists, as they usually don't
+     * have a name.
+     */
+    private void addTypeReference(Digest digest, Type type) {
+        if (type instanceof ListType) {
+            digest.add("list");
+            addTypeReference(digest, ((ListType) type).getElementType());
+        }
+        else {
+            digest.add(type != null? type.getName(): null);
+        }
+    }
+
+    /**
+     * Accumulates strings and names in a SHA-256 digest. Each string is followed by a zero byte, each name by a byte
+     * with value two, and null values are represented by a single byte with value one, so that different sequences of
+     * strings and names never produce the same input.
+     */
+    private static class Digest {
+        private final MessageDigest digest;
+
+        Digest() {
+            try {
+                digest = MessageDigest.getInstance("SHA-256");
+            }
+            catch (NoSuchAlgorithmException exception) {
+                throw new IllegalStateException("The SHA-256 algorithm isn't available", exception);
+            }
+        }
+
+        void add(Name name) {
+            if (name != null) {
+                name.getWords().forEach(this::add);
+                digest.update((byte) 2);
+            }
+            else {
+                digest.update((byte) 1);
+            }
+        }
+
+        void add(String value) {
+            if (value != null) {
+                digest.update(value.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            else {
+                digest.update((byte) 1);
+            }
+        }
+
+        String finish() {
+            StringBuilder buffer = new StringBuilder();
+            for (byte b : digest.digest()) {
+                buffer.append(String.format("%02x", b & 0xff));
+            }
+            return buffer.toString();
+        }
+    }
+}
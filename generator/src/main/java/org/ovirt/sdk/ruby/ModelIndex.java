@@ -0,0 +1,253 @@
+/*
+Copyright (c) 2016 Red Hat, Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.ovirt.sdk.ruby;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.ovirt.api.metamodel.concepts.EnumType;
+import org.ovirt.api.metamodel.concepts.Link;
+import org.ovirt.api.metamodel.concepts.Locator;
+import org.ovirt.api.metamodel.concepts.Method;
+import org.ovirt.api.metamodel.concepts.Model;
+import org.ovirt.api.metamodel.concepts.Service;
+import org.ovirt.api.metamodel.concepts.StructMember;
+import org.ovirt.api.metamodel.concepts.StructType;
+
+/**
+ * This class is an index of the model, containing the lists of concepts that the generators need, already filtered and
+ * sorted, and the XML tag names of types and members. It is created by the {@link ModelIndexer} once for each model,
+ * and it is immutable, so it can be shared by generators running in different threads.
+ *
+ * All the lists are sorted by name, like the streams returned by the model sorted with their natural order.
+ */
+public class ModelIndex {
+    private final Model model;
+    private final List<StructType> structTypes;
+    private final List<EnumType> enumTypes;
+    private final List<Service> services;
+    private final Map<StructType, StructIndex> structIndexes;
+    private final Map<Service, ServiceIndex> serviceIndexes;
+    private final Map<StructMember, MemberIndex> memberIndexes;
+
+    ModelIndex(Model model, List<StructType> structTypes, List<EnumType> enumTypes, List<Service> services,
+            Map<StructType, StructIndex> structIndexes, Map<Service, ServiceIndex> serviceIndexes,
+            Map<StructMember, MemberIndex> memberIndexes) {
+        this.model = model;
+        this.structTypes = Collections.unmodifiableList(structTypes);
+        this.enumTypes = Collections.unmodifiableList(enumTypes);
+        this.services = Collections.unmodifiableList(services);
+        this.structIndexes = Collections.unmodifiableMap(structIndexes);
+        this.serviceIndexes = Collections.unmodifiableMap(serviceIndexes);
+        this.memberIndexes = Collections.unmodifiableMap(memberIndexes);
+    }
+
+    /**
+     * Returns the model that this index was created for.
+     */
+    public Model getModel() {
+        return model;
+    }
+
+    /**
+     * Returns the struct types of the model.
+     */
+    public List<StructType> getStructTypes() {
+        return structTypes;
+    }
+
+    /**
+     * Returns the enum types of the model.
+     */
+    public List<EnumType> getEnumTypes() {
+        return enumTypes;
+    }
+
+    /**
+     * Returns the services of the model.
+     */
+    public List<Service> getServices() {
+        return services;
+    }
+
+    /**
+     * Returns the index of the given struct type.
+     */
+    public StructIndex getStruct(StructType type) {
+        return lookup(structIndexes, type, "struct type");
+    }
+
+    /**
+     * Returns the index of the given service.
+     */
+    public ServiceIndex getService(Service service) {
+        return lookup(serviceIndexes, service, "service");
+    }
+
+    /**
+     * Returns the index of the given attribute or link.
+     */
+    public MemberIndex getMember(StructMember member) {
+        return lookup(memberIndexes, member, "member");
+    }
+
+    private static <K, V> V lookup(Map<K, V> indexes, K key, String kind) {
+        V index = indexes.get(key);
+        if (index == null) {
+            throw new IllegalArgumentException("The " + kind + " \"" + key + "\" isn't part of the indexed model");
+        }
+        return index;
+    }
+
+    /**
+     * The index of a struct type.
+     */
+    public static class StructIndex {
+        private final List<StructMember> attributes;
+        private final List<StructMember> links;
+        private final List<StructMember> members;
+        private final List<Link> listLinks;
+        private final List<StructMember> xmlAttributeMembers;
+        private final List<StructMember> xmlElementMembers;
+        private final String singularTag;
+        private final String pluralTag;
+
+        StructIndex(List<StructMember> attributes, List<StructMember> links, List<StructMember> members,
+                List<Link> listLinks, List<StructMember> xmlAttributeMembers, List<StructMember> xmlElementMembers,
+                String singularTag, String pluralTag) {
+            this.attributes = Collections.unmodifiableList(attributes);
+            this.links = Collections.unmodifiableList(links);
+            this.members = Collections.unmodifiableList(members);
+            this.listLinks = Collections.unmodifiableList(listLinks);
+            this.xmlAttributeMembers = Collections.unmodifiableList(xmlAttributeMembers);
+            this.xmlElementMembers = Collections.unmodifiableList(xmlElementMembers);
+            this.singularTag = singularTag;
+            this.pluralTag = pluralTag;
+        }
+
+        /**
+         * Returns the attributes of the type, sorted by name.
+         */
+        public List<StructMember> getAttributes() {
+            return attributes;
+        }
+
+        /**
+         * Returns the links of the type, sorted by name.
+         */
+        public List<StructMember> getLinks() {
+            return links;
+        }
+
+        /**
+         * Returns the attributes and the links of the type, all of them sorted together by name.
+         */
+        public List<StructMember> getMembers() {
+            return members;
+        }
+
+        /**
+         * Returns the links of the type whose type is a list, sorted by name.
+         */
+        public List<Link> getListLinks() {
+            return listLinks;
+        }
+
+        /**
+         * Returns the attributes and then the links that are represented as XML attributes, each group sorted by
+         * name.
+         */
+        public List<StructMember> getXmlAttributeMembers() {
+            return xmlAttributeMembers;
+        }
+
+        /**
+         * Returns the attributes and then the links that are represented as XML elements, each group sorted by name.
+         */
+        public List<StructMember> getXmlElementMembers() {
+            return xmlElementMembers;
+        }
+
+        /**
+         * Returns the XML tag used for one instance of the type.
+         */
+        public String getSingularTag() {
+            return singularTag;
+        }
+
+        /**
+         * Returns the XML tag used for lists of instances of the type.
+         */
+        public String getPluralTag() {
+            return pluralTag;
+        }
+    }
+
+    /**
+     * The index of a service.
+     */
+    public static class ServiceIndex {
+        private final List<Method> methods;
+        private final List<Locator> locators;
+
+        ServiceIndex(List<Method> methods, List<Locator> locators) {
+            this.methods = Collections.unmodifiableList(methods);
+            this.locators = Collections.unmodifiableList(locators);
+        }
+
+        /**
+         * Returns the methods declared by the service, sorted by name.
+         */
+        public List<Method> getMethods() {
+            return methods;
+        }
+
+        /**
+         * Returns the locators declared by the service, sorted by name.
+         */
+        public List<Locator> getLocators() {
+            return locators;
+        }
+    }
+
+    /**
+     * The index of an attribute or link.
+     */
+    public static class MemberIndex {
+        private final String tag;
+        private final String singularTag;
+
+        MemberIndex(String tag, String singularTag) {
+            this.tag = tag;
+            this.singularTag = singularTag;
+        }
+
+        /**
+         * Returns the XML tag or attribute name used for the member.
+         */
+        public String getTag() {
+            return tag;
+        }
+
+        /**
+         * Returns the XML tag used for each element of the member, or {@code null} if it isn't a list.
+         */
+        public String getSingularTag() {
+            return singularTag;
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+Copyright (c) 2016 Red Hat, Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.ovirt.sdk.ruby;
+
+import static java.util.stream.Collectors.toList;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+
+import org.ovirt.api.metamodel.concepts.EnumType;
+import org.ovirt.api.metamodel.concepts.Link;
+import org.ovirt.api.metamodel.concepts.ListType;
+import org.ovirt.api.metamodel.concepts.Model;
+import org.ovirt.api.metamodel.concepts.Name;
+import org.ovirt.api.metamodel.concepts.Service;
+import org.ovirt.api.metamodel.concepts.StructMember;
+import org.ovirt.api.metamodel.concepts.StructType;
+import org.ovirt.api.metamodel.tool.Names;
+import org.ovirt.api.metamodel.tool.SchemaNames;
+
+/**
+ * This class creates the {@link ModelIndex} of a model. The index is created the first time that it is requested, and
+ * then the same index is returned to all the generators. Only the index of the last model is kept, as the tool works
+ * with one model at a time. In watch mode the index of the previous model is replaced when the generators request the
+ * index of the new one, so old models aren't retained.
+ */
+@ApplicationScoped
+public class ModelIndexer {
+    // Reference to the objects used to calculate names:
+    @Inject private Names names;
+    @Inject private SchemaNames schemaNames;
+
+    // The last model indexed, and its index:
+    private Model model;
+    private ModelIndex index;
+
+    /**
+     * Returns the name of the XML tag that corresponds to the given name. This is intended for the names that aren't
+     * part of the index, like the names of the parameters of methods. The {@link SchemaNames} object isn't documented
+     * as thread safe, so calls are synchronized with the creation of indexes, which also uses it.
+     */
+    public void setNames(Names newNames) {
+        names = newNames;
+    }
+
+    public void setSchemaNames(SchemaNames newSchemaNames) {
+        schemaNames = newSchemaNames;
+    }
+
+    public synchronized String getTagName(Name name) {
+        return schemaNames.getSchemaTagName(name);
+    }
+
+    /**
+     * Returns the index of the given model, creating it if needed.
+     */
+    public synchronized ModelIndex getIndex(Model newModel) {
+        if (newModel != model) {
+            index = createIndex(newModel);
+            model = newModel;
+        }
+        return index;
+    }
+
+    private ModelIndex createIndex(Model model) {
+        // Types and services:
+        List<StructType> structTypes = model.types()
+            .filter(StructType.class::isInstance)
+            .map(StructType.class::cast)
+            .sorted()
+            .collect(toList());
+        List<EnumType> enumTypes = model.types()
+            .filter(EnumType.class::isInstance)
+            .map(EnumType.class::cast)
+            .sorted()
+            .collect(toList());
+        List<Service> services = model.services()
+            .sorted()
+            .collect(toList());
+
+        // Members of struct types:
+        Map<StructType, ModelIndex.StructIndex> structIndexes = new IdentityHashMap<>();
+        Map<StructMember, ModelIndex.MemberIndex> memberIndexes = new IdentityHashMap<>();
+        for (StructType type : structTypes) {
+            structIndexes.put(type, createStructIndex(type));
+            Stream.concat(type.attributes(), type.links()).forEach(member ->
+                memberIndexes.put(member, createMemberIndex(member))
+            );
+        }
+
+        // Methods and locators of services:
+        Map<Service, ModelIndex.ServiceIndex> serviceIndexes = new IdentityHashMap<>();
+        for (Service service : services) {
+            serviceIndexes.put(service, new ModelIndex.ServiceIndex(
+                service.methods().sorted().collect(toList()),
+                service.locators().sorted().collect(toList())
+            ));
+        }
+
+        return new ModelIndex(model, structTypes, enumTypes, services, structIndexes, serviceIndexes, memberIndexes);
+    }
+
+    private ModelIndex.StructIndex createStructIndex(StructType type) {
+        List<StructMember> attributes = type.attributes().sorted().collect(toList());
+        List<StructMember> links = type.links().sorted().collect(toList());
+        List<StructMember> members = Stream.concat(type.attributes(), type.links()).sorted().collect(toList());
+        List<Link> listLinks = type.links()
+            .filter(link -> link.getType() instanceof ListType)
+            .sorted()
+            .collect(toList());
+        List<StructMember> xmlAttributeMembers = new ArrayList<>();
+        List<StructMember> xmlElementMembers = new ArrayList<>();
+        Stream.concat(attributes.stream(), links.stream()).forEach(member -> {
+            if (schemaNames.isRepresentedAsAttribute(member.getName())) {
+                xmlAttributeMembers.add(member);
+            }
+            else {
+                xmlElementMembers.add(member);
+            }
+        });
+        Name name = type.getName();
+        return new ModelIndex.StructIndex(
+            attributes,
+            links,
+            members,
+            listLinks,
+            xmlAttributeMembers,
+            xmlElementMembers,
+            schemaNames.getSchemaTagName(name),
+            schemaNames.getSchemaTagName(names.getPlural(name))
+        );
+    }
+
+    private ModelIndex.MemberIndex createMemberIndex(StructMember member) {
+        Name name = member.getName();
+        String singularTag = null;
+        if (member.getType() instanceof ListType) {
+            singularTag = schemaNames.getSchemaTagName(names.getSingular(name));
+        }
+        return new ModelIndex.MemberIndex(schemaNames.getSchemaTagName(name), singularTag);
+    }
+}
@@ -0,0 +1,32 @@
+/*
+Copyright (c) 2016 Red Hat, Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.ovirt.sdk.ruby;
+
+/**
+ * The parts of the model that generators can depend on. When the model changes the tool uses this to decide which
+ * generators need to run again.
+ */
+public enum ModelPart {
+    /**
+     * The types, including their attributes, links and values.
+     */
+    TYPES,
+
+    /**
+     * The services, including their methods, parameters and locators.
+     */
+    SERVICES
+}
@@ -0,0 +1,745 @@
+/*
+Copyright (c) 2016 Red Hat, Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.ovirt.sdk.ruby;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * This class writes and reads graphs of objects, like the ones created by the model analyzer, to and from binary
+ * streams. The classes of the model aren't serializable, so this doesn't use Java serialization. Instead it copies the
+ * values of the fields of the objects using reflection, and it preserves the identity of the objects, so that shared
+ * references and cycles are restored correctly.
+ *
+ * Only the types that appear in the model are supported: objects of the classes of the concepts package of the
+ * metamodel, which need a constructor without parameters, strings, boxed primitives, big numbers, enums, arrays and the
+ * common collections from {@code java.util}. Any other type will result in an {@link IllegalArgumentException}.
+ *
+ * The stream is read with the same rules: the names of the classes are checked before loading them, and the lengths
+ * of strings, arrays and collections are bounded by the length of the stream, so a damaged or crafted stream results
+ * in an {@link IOException} instead of creating objects of other classes or exhausting the memory.
+ *
+ * The {@link #isEquivalent(Object, Object)} method compares two graphs of objects using the same rules, and is used to
+ * check that a graph read from a stream is equivalent to the original.
+ */
+public class ModelSerializer {
+    // The tags that indicate the kind of each value in the stream:
+    private static final byte NULL = 0;
+    private static final byte REFERENCE = 1;
+    private static final byte STRING = 2;
+    private static final byte BOOLEAN = 3;
+    private static final byte BYTE = 4;
+    private static final byte SHORT = 5;
+    private static final byte CHAR = 6;
+    private static final byte INTEGER = 7;
+    private static final byte LONG = 8;
+    private static final byte FLOAT = 9;
+    private static final byte DOUBLE = 10;
+    private static final byte BIG_INTEGER = 11;
+    private static final byte BIG_DECIMAL = 12;
+    private static final byte ENUM = 13;
+    private static final byte CLASS = 14;
+    private static final byte ARRAY = 15;
+    private static final byte LIST = 16;
+    private static final byte SET = 17;
+    private static final byte MAP = 18;
+    private static final byte OBJECT = 19;
+
+    // The kinds of collections that can be restored:
+    private static final byte PLAIN = 0;
+    private static final byte UNMODIFIABLE = 1;
+    private static final byte LINKED = 2;
+    private static final byte SORTED = 3;
+
+    // The package of the classes whose objects are copied field by field:
+    private static final String CONCEPTS_PACKAGE = "org.ovirt.api.metamodel.concepts.";
+
+    // The classes of the Java runtime that can be used as types of arrays or as values of fields of type class, indexed
+    // by name:
+    private static final Map<String, Class<?>> RUNTIME_CLASSES = new HashMap<>();
+
+    static {
+        for (Class<?> clazz : Arrays.asList(
+            boolean.class, byte.class, short.class, char.class, int.class, long.class, float.class, double.class,
+            Boolean.class, Byte.class, Short.class, Character.class, Integer.class, Long.class, Float.class,
+            Double.class, BigInteger.class, BigDecimal.class, String.class, Object.class)) {
+            RUNTIME_CLASSES.put(clazz.getName(), clazz);
+        }
+    }
+
+    // The classes of the unmodifiable collections created by the methods of the {@link Collections} class. Note that
+    // these classes are private, so the only way to get them is to create instances.
+    private static final Set<Class<?>> UNMODIFIABLE_CLASSES = new HashSet<>(Arrays.asList(
+        Collections.unmodifiableList(new ArrayList<>()).getClass(),
+        Collections.unmodifiableList(new LinkedList<>()).getClass(),
+        Collections.unmodifiableSet(new HashSet<>()).getClass(),
+        Collections.unmodifiableSortedSet(new TreeSet<>()).getClass(),
+        Collections.unmodifiableNavigableSet(new TreeSet<>()).getClass(),
+        Collections.unmodifiableMap(new HashMap<>()).getClass(),
+        Collections.unmodifiableSortedMap(new TreeMap<>()).getClass(),
+        Collections.unmodifiableNavigableMap(new TreeMap<>()).getClass(),
+        Collections.emptyList().getClass(),
+        Collections.emptySet().getClass(),
+        Collections.emptyMap().getClass(),
+        Collections.singletonList(null).getClass(),
+        Collections.singleton(null).getClass(),
+        Collections.singletonMap(null, null).getClass()
+    ));
+
+    // Cache of the fields that are copied for each class:
+    private final Map<Class<?>, Field[]> fieldsCache = new HashMap<>();
+
+    /**
+     * Writes the graph of objects that starts with the given root object.
+     */
+    public void write(Object root, DataOutputStream out) throws IOException {
+        new Writer(out).writeValue(root);
+        out.flush();
+    }
+
+    /**
+     * Reads a graph of objects previously written with the {@link #write(Object, DataOutputStream)} method, and returns
+     * the root object.
+     *
+     * @param in the stream to read from
+     * @param length the number of bytes available in the stream, used to bound the lengths read from it
+     */
+    public Object read(DataInputStream in, long length) throws IOException {
+        return new Reader(in, length).readValue();
+    }
+
+    /**
+     * Checks if the two given graphs of objects are equivalent: they have the same shape, the objects have the same
+     * classes, and the simple values are equal. Lists and arrays are compared in order, but sets and maps are compared
+     * without taking the order into account, as the order of hash based collections may change when they are read.
+     */
+    public boolean isEquivalent(Object left, Object right) {
+        return new Comparer(new IdentityHashMap<>()).compareValues(left, right);
+    }
+
+    /**
+     * Returns the fields of the given class, including the fields inherited from the super classes, that need to be
+     * copied. Static and transient fields are excluded. The fields are sorted by declaring class, from the top of the
+     * hierarchy, and then by name, so that the order is always the same.
+     */
+    private Field[] getFields(Class<?> clazz) {
+        Field[] fields = fieldsCache.get(clazz);
+        if (fields == null) {
+            List<Field> list = new ArrayList<>();
+            Class<?> current = clazz;
+            while (current != null && current != Object.class) {
+                List<Field> declared = new ArrayList<>();
+                for (Field field : current.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) {
+                        continue;
+                    }
+                    field.setAccessible(true);
+                    declared.add(field);
+                }
+                declared.sort(Comparator.comparing(Field::getName));
+                list.addAll(0, declared);
+                current = current.getSuperclass();
+            }
+            fields = list.toArray(new Field[list.size()]);
+            fieldsCache.put(clazz, fields);
+        }
+        return fields;
+    }
+
+    /**
+     * Checks if the given class is part of the Java runtime. The objects of these classes aren't copied field by field,
+     * as their internals aren't accessible and can change from one version to another.
+     */
+    private boolean isRuntimeClass(Class<?> clazz) {
+        return clazz.getClassLoader() == null;
+    }
+
+    /**
+     * Checks if the given class can appear in the stream, either because it is one of the supported classes of the Java
+     * runtime or because it is one of the classes of the model.
+     */
+    private boolean isAllowed(Class<?> clazz) {
+        if (RUNTIME_CLASSES.get(clazz.getName()) == clazz) {
+            return true;
+        }
+        return isConcept(clazz.getName()) && !clazz.isAnonymousClass() && !clazz.isSynthetic();
+    }
+
+    /**
+     * Checks if the given class name is the name of one of the classes of the model.
+     */
+    private boolean isConcept(String name) {
+        return name.startsWith(CONCEPTS_PACKAGE) && name.indexOf('.', CONCEPTS_PACKAGE.length()) == -1;
+    }
+
+    /**
+     * Checks that the objects of the given class can be copied field by field.
+     */
+    private void checkCopyable(Class<?> clazz) {
+        if (!isConcept(clazz.getName()) || !isAllowed(clazz) || clazz.isInterface() || clazz.isEnum() ||
+            Modifier.isAbstract(clazz.getModifiers())) {
+            throw new IllegalArgumentException("Objects of class \"" + clazz.getName() + "\" can't be serialized");
+        }
+    }
+
+    /**
+     * Checks if the given value is a simple value, one that is compared using the {@code equals} method.
+     */
+    private boolean isSimple(Object value) {
+        return value instanceof String || value instanceof Boolean || value instanceof Number ||
+            value instanceof Character || value instanceof Enum || value instanceof Class;
+    }
+
+    private class Writer {
+        private final DataOutputStream out;
+        private final Map<Object, Integer> handles = new IdentityHashMap<>();
+        private final Map<Class<?>, Integer> classes = new HashMap<>();
+
+        Writer(DataOutputStream out) {
+            this.out = out;
+        }
+
+        void writeValue(Object value) throws IOException {
+            // Simple values that don't need handles:
+            if (value == null) {
+                out.writeByte(NULL);
+                return;
+            }
+            if (value instanceof Boolean) {
+                out.writeByte(BOOLEAN);
+                out.writeBoolean((Boolean) value);
+                return;
+            }
+            if (value instanceof Byte) {
+                out.writeByte(BYTE);
+                out.writeByte((Byte) value);
+                return;
+            }
+            if (value instanceof Short) {
+                out.writeByte(SHORT);
+                out.writeShort((Short) value);
+                return;
+            }
+            if (value instanceof Character) {
+                out.writeByte(CHAR);
+                out.writeChar((Character) value);
+                return;
+            }
+            if (value instanceof Integer) {
+                out.writeByte(INTEGER);
+                out.writeInt((Integer) value);
+                return;
+            }
+            if (value instanceof Long) {
+                out.writeByte(LONG);
+                out.writeLong((Long) value);
+                return;
+            }
+            if (value instanceof Float) {
+                out.writeByte(FLOAT);
+                out.writeFloat((Float) value);
+                return;
+            }
+            if (value instanceof Double) {
+                out.writeByte(DOUBLE);
+                out.writeDouble((Double) value);
+                return;
+            }
+            if (value instanceof Enum) {
+                out.writeByte(ENUM);
+                writeClass(((Enum<?>) value).getDeclaringClass());
+                writeString(((Enum<?>) value).name());
+                return;
+            }
+            if (value instanceof Class) {
+                out.writeByte(CLASS);
+                writeClass((Class<?>) value);
+                return;
+            }
+
+            // Values that have already been written are replaced by references:
+            Integer handle = handles.get(value);
+            if (handle != null) {
+                out.writeByte(REFERENCE);
+                out.writeInt(handle);
+                return;
+            }
+            handles.put(value, handles.size());
+
+            // Values that need handles:
+            if (value instanceof String) {
+                out.writeByte(STRING);
+                writeString((String) value);
+            }
+            else if (value instanceof BigInteger) {
+                out.writeByte(BIG_INTEGER);
+                writeString(value.toString());
+            }
+            else if (value instanceof BigDecimal) {
+                out.writeByte(BIG_DECIMAL);
+                writeString(value.toString());
+            }
+            else if (value.getClass().isArray()) {
+                out.writeByte(ARRAY);
+                writeClass(value.getClass().getComponentType());
+                int length = Array.getLength(value);
+                out.writeInt(length);
+                for (int i = 0; i < length; i++) {
+                    writeValue(Array.get(value, i));
+                }
+            }
+            else if (value instanceof List) {
+                List<?> list = (List<?>) value;
+                out.writeByte(LIST);
+                out.writeByte(getKind(list));
+                out.writeInt(list.size());
+                for (Object item : list) {
+                    writeValue(item);
+                }
+            }
+            else if (value instanceof Set) {
+                Set<?> set = (Set<?>) value;
+                if (set instanceof SortedSet && ((SortedSet<?>) set).comparator() != null) {
+                    throw new IllegalArgumentException("Sets with comparators can't be serialized");
+                }
+                out.writeByte(SET);
+                out.writeByte(getKind(set));
+                out.writeInt(set.size());
+                for (Object item : set) {
+                    writeValue(item);
+                }
+            }
+            else if (value instanceof Map) {
+                Map<?, ?> map = (Map<?, ?>) value;
+                if (map instanceof SortedMap && ((SortedMap<?, ?>) map).comparator() != null) {
+                    throw new IllegalArgumentException("Maps with comparators can't be serialized");
+                }
+                out.writeByte(MAP);
+                out.writeByte(getKind(map));
+                out.writeInt(map.size());
+                for (Map.Entry<?, ?> entry : map.entrySet()) {
+                    writeValue(entry.getKey());
+                    writeValue(entry.getValue());
+                }
+            }
+            else {
+                Class<?> clazz = value.getClass();
+                checkCopyable(clazz);
+                out.writeByte(OBJECT);
+                writeClass(clazz);
+                try {
+                    for (Field field : getFields(clazz)) {
+                        writeValue(field.get(value));
+                    }
+                }
+                catch (IllegalAccessException exception) {
+                    throw new IllegalArgumentException("Can't read fields of class \"" + clazz.getName() + "\"", exception);
+                }
+            }
+        }
+
+        byte getKind(Object collection) {
+            if (UNMODIFIABLE_CLASSES.contains(collection.getClass())) {
+                return UNMODIFIABLE;
+            }
+            if (collection instanceof SortedSet || collection instanceof SortedMap) {
+                return SORTED;
+            }
+            if (collection instanceof LinkedList) {
+                return LINKED;
+            }
+            if (collection instanceof HashSet && !(collection instanceof LinkedHashSet)) {
+                return PLAIN;
+            }
+            if (collection instanceof HashMap && !(collection instanceof LinkedHashMap)) {
+                return PLAIN;
+            }
+            return collection instanceof List? PLAIN: LINKED;
+        }
+
+        void writeClass(Class<?> clazz) throws IOException {
+            if (!isAllowed(clazz)) {
+                throw new IllegalArgumentException("Class \"" + clazz.getName() + "\" can't be serialized");
+            }
+            Integer index = classes.get(clazz);
+            if (index != null) {
+                out.writeInt(index);
+            }
+            else {
+                out.writeInt(-1);
+                writeString(clazz.getName());
+                classes.put(clazz, classes.size());
+            }
+        }
+
+        void writeString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private class Reader {
+        private final DataInputStream in;
+        private final List<Object> objects = new ArrayList<>();
+        private final List<Class<?>> classes = new ArrayList<>();
+
+        // The sum of the lengths that can still be read. Each byte of a string and each item of an array or collection
+        // uses at least one byte of the stream, so the sum of all the lengths can't be larger than the stream.
+        private long budget;
+
+        Reader(DataInputStream in, long length) {
+            this.in = in;
+            this.budget = length;
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Object readValue() throws IOException {
+            byte tag = in.readByte();
+            switch (tag) {
+            case NULL:
+                return null;
+            case REFERENCE:
+                return objects.get(readIndex(objects.size()));
+            case BOOLEAN:
+                return in.readBoolean();
+            case BYTE:
+                return in.readByte();
+            case SHORT:
+                return in.readShort();
+            case CHAR:
+                return in.readChar();
+            case INTEGER:
+                return in.readInt();
+            case LONG:
+                return in.readLong();
+            case FLOAT:
+                return in.readFloat();
+            case DOUBLE:
+                return in.readDouble();
+            case ENUM: {
+                Class<?> clazz = readClass();
+                if (!clazz.isEnum()) {
+                    throw new IOException("Class \"" + clazz.getName() + "\" isn't an enum");
+                }
+                return Enum.valueOf((Class<Enum>) clazz, readString());
+            }
+            case CLASS:
+                return readClass();
+            case STRING:
+                return register(readString());
+            case BIG_INTEGER:
+                return register(new BigInteger(readString()));
+            case BIG_DECIMAL:
+                return register(new BigDecimal(readString()));
+            case ARRAY: {
+                Class<?> componentType = readClass();
+                int length = readLength();
+                Object array = register(Array.newInstance(componentType, length));
+                for (int i = 0; i < length; i++) {
+                    Array.set(array, i, readValue());
+                }
+                return array;
+            }
+            case LIST: {
+                byte kind = in.readByte();
+                int size = readLength();
+                List<Object> list = kind == LINKED? new LinkedList<>(): new ArrayList<>(size);
+                List<Object> result = kind == UNMODIFIABLE? Collections.unmodifiableList(list): list;
+                register(result);
+                readItems(list, size);
+                return result;
+            }
+            case SET: {
+                byte kind = in.readByte();
+                int size = readLength();
+                Set<Object> set;
+                switch (kind) {
+                case PLAIN:
+                    set = new HashSet<>();
+                    break;
+                case SORTED:
+                    set = new TreeSet<>();
+                    break;
+                default:
+                    set = new LinkedHashSet<>();
+                }
+                Set<Object> result = kind == UNMODIFIABLE? Collections.unmodifiableSet(set): set;
+                register(result);
+                readItems(set, size);
+                return result;
+            }
+            case MAP: {
+                byte kind = in.readByte();
+                int size = readLength();
+                Map<Object, Object> map;
+                switch (kind) {
+                case PLAIN:
+                    map = new HashMap<>();
+                    break;
+                case SORTED:
+                    map = new TreeMap<>();
+                    break;
+                default:
+                    map = new LinkedHashMap<>();
+                }
+                Map<Object, Object> result = kind == UNMODIFIABLE? Collections.unmodifiableMap(map): map;
+                register(result);
+                for (int i = 0; i < size; i++) {
+                    Object key = readValue();
+                    Object value = readValue();
+                    map.put(key, value);
+                }
+                return result;
+            }
+            case OBJECT: {
+                Class<?> clazz = readClass();
+                checkCopyable(clazz);
+                Object object;
+                try {
+                    Constructor<?> constructor = clazz.getDeclaredConstructor();
+                    constructor.setAccessible(true);
+                    object = constructor.newInstance();
+                }
+                catch (ReflectiveOperationException exception) {
+                    throw new IllegalArgumentException("Can't create object of class \"" + clazz.getName() + "\"", exception);
+                }
+                register(object);
+                try {
+                    for (Field field : getFields(clazz)) {
+                        field.set(object, readValue());
+                    }
+                }
+                catch (IllegalAccessException exception) {
+                    throw new IllegalArgumentException("Can't set fields of class \"" + clazz.getName() + "\"", exception);
+                }
+                return object;
+            }
+            default:
+                throw new IOException("Unknown tag " + tag);
+            }
+        }
+
+        void readItems(Collection<Object> collection, int size) throws IOException {
+            for (int i = 0; i < size; i++) {
+                collection.add(readValue());
+            }
+        }
+
+        Object register(Object object) {
+            objects.add(object);
+            return object;
+        }
+
+        Class<?> readClass() throws IOException {
+            int index = in.readInt();
+            if (index >= 0) {
+                if (index >= classes.size()) {
+                    throw new IOException("Invalid class index " + index);
+                }
+                return classes.get(index);
+            }
+            String name = readString();
+            Class<?> clazz = RUNTIME_CLASSES.get(name);
+            if (clazz == null) {
+                // The name is checked before loading the class, so that classes outside of the model are never loaded:
+                if (!isConcept(name)) {
+                    throw new IOException("Class \"" + name + "\" can't be read");
+                }
+                try {
+                    clazz = Class.forName(name, false, ModelSerializer.class.getClassLoader());
+                }
+                catch (ClassNotFoundException exception) {
+                    throw new IOException("Can't find class \"" + name + "\"", exception);
+                }
+                if (!isAllowed(clazz)) {
+                    throw new IOException("Class \"" + name + "\" can't be read");
+                }
+            }
+            classes.add(clazz);
+            return clazz;
+        }
+
+        String readString() throws IOException {
+            byte[] bytes = new byte[readLength()];
+            in.readFully(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        int readLength() throws IOException {
+            int length = in.readInt();
+            if (length < 0 || length > budget) {
+                throw new IOException("Invalid length " + length);
+            }
+            budget -= length;
+            return length;
+        }
+
+        int readIndex(int size) throws IOException {
+            int index = in.readInt();
+            if (index < 0 || index >= size) {
+                throw new IOException("Invalid reference " + index);
+            }
+            return index;
+        }
+    }
+
+    private class Comparer {
+        // The pairs of objects that have already been compared, or that are being compared, so that shared references
+        // and cycles are handled correctly:
+        private final Map<Object, Object> pairs;
+
+        Comparer(Map<Object, Object> pairs) {
+            this.pairs = pairs;
+        }
+
+        boolean compareValues(Object left, Object right) {
+            if (left == null || right == null) {
+                return left == right;
+            }
+            if (isSimple(left) || isSimple(right)) {
+                return left.equals(right);
+            }
+
+            // Objects that have already been paired must be paired with the same object again:
+            Object paired = pairs.get(left);
+            if (paired != null) {
+                return paired == right;
+            }
+            pairs.put(left, right);
+
+            if (left.getClass().isArray()) {
+                if (left.getClass() != right.getClass() || Array.getLength(left) != Array.getLength(right)) {
+                    return false;
+                }
+                for (int i = 0; i < Array.getLength(left); i++) {
+                    if (!compareValues(Array.get(left, i), Array.get(right, i))) {
+                        return false;
+                    }
+                }
+                return true;
+            }
+            if (left instanceof List) {
+                return right instanceof List && compareItems((List<?>) left, (List<?>) right);
+            }
+            if (left instanceof Set) {
+                return right instanceof Set && compareUnordered((Set<?>) left, (Set<?>) right);
+            }
+            if (left instanceof Map) {
+                return right instanceof Map &&
+                    compareUnordered(((Map<?, ?>) left).entrySet(), ((Map<?, ?>) right).entrySet());
+            }
+            if (left instanceof Map.Entry) {
+                Map.Entry<?, ?> leftEntry = (Map.Entry<?, ?>) left;
+                Map.Entry<?, ?> rightEntry = (Map.Entry<?, ?>) right;
+                return compareValues(leftEntry.getKey(), rightEntry.getKey()) &&
+                    compareValues(leftEntry.getValue(), rightEntry.getValue());
+            }
+            Class<?> clazz = left.getClass();
+            if (clazz != right.getClass()) {
+                return false;
+            }
+            if (isRuntimeClass(clazz)) {
+                return left.equals(right);
+            }
+            try {
+                for (Field field : getFields(clazz)) {
+                    if (!compareValues(field.get(left), field.get(right))) {
+                        return false;
+                    }
+                }
+            }
+            catch (IllegalAccessException exception) {
+                throw new IllegalArgumentException("Can't read fields of class \"" + clazz.getName() + "\"", exception);
+            }
+            return true;
+        }
+
+        boolean compareItems(Collection<?> left, Collection<?> right) {
+            if (left.size() != right.size()) {
+                return false;
+            }
+            Iterator<?> rightIterator = right.iterator();
+            for (Object leftItem : left) {
+                if (!compareValues(leftItem, rightIterator.next())) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        boolean compareUnordered(Collection<?> left, Collection<?> right) {
+            // Most of the times the order will be the same, so try that first, and if it fails then try to find a
+            // matching item for each item. Each attempt is done with a copy of the pairs, so that the pairs created by
+            // an attempt that fails don't affect the result.
+            Comparer ordered = new Comparer(new IdentityHashMap<>(pairs));
+            if (ordered.compareItems(left, right)) {
+                pairs.putAll(ordered.pairs);
+                return true;
+            }
+            if (left.size() != right.size()) {
+                return false;
+            }
+            List<Object> candidates = new LinkedList<>(right);
+            for (Object leftItem : left) {
+                boolean found = false;
+                Iterator<Object> iterator = candidates.iterator();
+                while (iterator.hasNext()) {
+                    Comparer attempt = new Comparer(new IdentityHashMap<>(pairs));
+                    if (attempt.compareValues(leftItem, iterator.next())) {
+                        pairs.putAll(attempt.pairs);
+                        iterator.remove();
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+Copyright (c) 2016 Red Hat, Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.ovirt.sdk.ruby;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * This class watches the source of the model for changes. If the model is a directory then all the files inside it,
+ * including subdirectories, are watched. If it is a file, for example a {@code .jar} file, then the directory that
+ * contains it is watched, and only the changes to that file are considered.
+ *
+ * Editors and build tools usually generate several events for each save, so changes are reported only when no new
+ * events have been received during a short quiet period.
+ */
+public class ModelWatcher implements Closeable {
+    // The time without events that is needed to consider that a change is complete, in milliseconds:
+    private static final long QUIET_PERIOD = 100;
+
+    // The watch service and the directories registered with it:
+    private final WatchService service;
+    private final Map<WatchKey, Path> directories = new HashMap<>();
+
+    // The name of the watched file, or null if the model is a directory:
+    private final Path fileName;
+
+    public ModelWatcher(File model) throws IOException {
+        service = FileSystems.getDefault().newWatchService();
+        Path path = model.getAbsoluteFile().toPath();
+        if (Files.isDirectory(path)) {
+            fileName = null;
+            registerTree(path);
+        }
+        else {
+            fileName = path.getFileName();
+            register(path.getParent());
+        }
+    }
+
+    /**
+     * Waits till the model changes.
+     */
+    public void awaitChange() throws IOException, InterruptedException {
+        // Wait for the first relevant event:
+        while (!processEvents(service.take())) {
+            // Keep waiting.
+        }
+
+        // Wait till there are no more events during the quiet period:
+        WatchKey key;
+        while ((key = service.poll(QUIET_PERIOD, TimeUnit.MILLISECONDS)) != null) {
+            processEvents(key);
+        }
+    }
+
+    /**
+     * Processes the events of the given key, registering the directories that have been created, and returns
+     * {@code true} if any of the events affects the model.
+     */
+    private boolean processEvents(WatchKey key) throws IOException {
+        boolean relevant = false;
+        Path directory = directories.get(key);
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                relevant = true;
+                continue;
+            }
+            Path name = (Path) event.context();
+            if (fileName != null) {
+                if (name.equals(fileName)) {
+                    relevant = true;
+                }
+                continue;
+            }
+            relevant = true;
+            if (event.kind() == ENTRY_CREATE && directory != null) {
+                Path created = directory.resolve(name);
+                if (Files.isDirectory(created)) {
+                    registerTree(created);
+                }
+            }
+        }
+        if (!key.reset()) {
+            directories.remove(key);
+        }
+        return relevant;
+    }
+
+    private void registerTree(Path root) throws IOException {
+        try (Stream<Path> paths = Files.walk(root)) {
+            for (Path path : (Iterable<Path>) paths.filter(Files::isDirectory)::iterator) {
+                register(path);
+            }
+        }
+    }
+
+    private void register(Path directory) throws IOException {
+        WatchKey key = directory.register(service, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+        directories.put(key, directory);
+    }
+
+    @Override
+    public void close() throws IOException {
+        service.close();
+    }
+}
@@ -0,0 +1,262 @@
+/*
+Copyright (c) 2016 Red Hat, Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.ovirt.sdk.ruby;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.enterprise.context.ApplicationScoped;
+
+/**
+ * This class keeps track of the files generated in the output directory, and of the hashes of their contents, so that
+ * files whose content doesn't change aren't written again. This avoids changing the modification times of the files,
+ * and thus unnecessary rebuilds of the things that depend on them.
+ *
+ * The hashes are stored in a manifest file that is located next to the output directory. For example, if the output
+ * directory is {@code sdk/lib} then the manifest will be {@code sdk/lib.manifest}. Each line of the manifest contains
+ * the SHA-256 hash of the content of a file and its path relative to the output directory. The manifest is used to
+ * find the files that are no longer generated; whether a file has changed is always decided comparing its current
+ * content, so that files modified by other means are regenerated.
+ *
+ * The generators may run concurrently, so all the methods that are called while generating files are thread safe.
+ */
+@ApplicationScoped
+public class OutputManifest {
+    // The algorithm used to calculate the hashes:
+    private static final String HASH_ALGORITHM = "SHA-256";
+
+    // The size of the buffer used to read files in order to calculate their hashes:
+    private static final int HASH_BUFFER_SIZE = 64 * 1024;
+
+    // The output directory and the manifest file:
+    private File outDir;
+    private File manifestFile;
+
+    // The hashes loaded from the manifest file, and the hashes of the files generated in this run, indexed by relative
+    // path:
+    private Map<String, String> oldHashes = new ConcurrentHashMap<>();
+    private Map<String, String> newHashes = new ConcurrentHashMap<>();
+
+    // The counters used to generate the summary:
+    private AtomicInteger written = new AtomicInteger();
+    private AtomicInteger skipped = new AtomicInteger();
+    private AtomicInteger removed = new AtomicInteger();
+
+    /**
+     * Prepares the manifest for the given output directory, loading the hashes saved by the previous run, if any.
+     *
+     * @param newOutDir the output directory
+     * @throws IOException if something fails while reading the manifest file
+     */
+    public void load(File newOutDir) throws IOException {
+        outDir = newOutDir.getAbsoluteFile();
+        manifestFile = new File(outDir.getParentFile(), outDir.getName() + ".manifest");
+        oldHashes.clear();
+        newHashes.clear();
+        written.set(0);
+        skipped.set(0);
+        removed.set(0);
+        if (manifestFile.exists()) {
+            for (String line : Files.readAllLines(manifestFile.toPath(), StandardCharsets.UTF_8)) {
+                int index = line.indexOf("  ");
+                if (index > 0) {
+                    oldHashes.put(line.substring(index + 2), line.substring(0, index));
+                }
+            }
+        }
+    }
+
+    /**
+     * Replaces the given file with the content of the given temporary file, but only if the content has changed. The
+     * replacement is done moving the temporary file, atomically if the file system supports it. If the content hasn't
+     * changed the temporary file is deleted and the existing file is left untouched.
+     *
+     * @param file the file to update
+     * @param temp the temporary file that contains the new content, it should be in the same directory than the file
+     * @throws IOException if something fails while calculating hashes or moving files
+     */
+    public void update(File file, Path temp) throws IOException {
+        String path = getRelativePath(file);
+        String newHash = hash(temp);
+        newHashes.put(path, newHash);
+
+        // Check if the current content of the file is the same that has been generated. Note that the hash recorded
+        // in the manifest can't be trusted for this, as the file may have been modified after the previous run, for
+        // example by hand, and that modification would then never be overwritten. Comparing the lengths first avoids
+        // calculating the hash when the content has obviously changed.
+        boolean unchanged = false;
+        if (file.exists() && file.length() == Files.size(temp)) {
+            unchanged = hash(file.toPath()).equals(newHash);
+        }
+
+        // Replace the file only if it has changed:
+        if (unchanged) {
+            Files.delete(temp);
+            skipped.incrementAndGet();
+        }
+        else {
+            System.out.println("Writing file \"" + file.getAbsolutePath() + "\".");
+            try {
+                Files.move(temp, file.toPath(), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            }
+            catch (AtomicMoveNotSupportedException exception) {
+                Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            written.incrementAndGet();
+        }
+    }
+
+    /**
+     * Removes the files that were generated by the previous run but not by this one, saves the new manifest and prints
+     * a summary of the written, skipped and removed files.
+     *
+     * @throws IOException if something fails while removing files or writing the manifest
+     */
+    public void save() throws IOException {
+        save(false);
+    }
+
+    /**
+     * Saves the new manifest and prints a summary of the written, skipped and removed files. If {@code partial} is
+     * {@code true} only some of the generators have run, so the files generated by the previous run but not by this
+     * one aren't removed, and they are kept in the manifest.
+     *
+     * @param partial indicates if only some of the generators have run
+     * @throws IOException if something fails while removing files or writing the manifest
+     */
+    public void save(boolean partial) throws IOException {
+        // Remove the files that are no longer generated, or keep them if this is a partial run:
+        List<String> obsolete = new ArrayList<>(oldHashes.keySet());
+        obsolete.removeAll(newHashes.keySet());
+        Collections.sort(obsolete);
+        for (String path : obsolete) {
+            if (partial) {
+                newHashes.put(path, oldHashes.get(path));
+                continue;
+            }
+            File file = new File(outDir, path.replace('/', File.separatorChar));
+            if (file.exists()) {
+                System.out.println("Removing file \"" + file.getAbsolutePath() + "\".");
+                Files.delete(file.toPath());
+                removed.incrementAndGet();
+            }
+        }
+
+        // Write the new manifest, sorted by path so that it is stable:
+        List<String> paths = new ArrayList<>(newHashes.keySet());
+        Collections.sort(paths);
+        List<String> lines = new ArrayList<>(paths.size());
+        for (String path : paths) {
+            lines.add(newHashes.get(path) + "  " + path);
+        }
+        Path temp = manifestFile.getParentFile().toPath().resolve(
+            "." + manifestFile.getName() + "." + UUID.randomUUID() + ".tmp"
+        );
+        try {
+            Files.write(temp, lines, StandardCharsets.UTF_8);
+            Files.move(temp, manifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        finally {
+            Files.deleteIfExists(temp);
+        }
+
+        // Print the summary:
+        System.out.println(
+            "Wrote " + written.get() + " files, skipped " + skipped.get() + " unchanged files and removed " +
+            removed.get() + " obsolete files."
+        );
+    }
+
+    /**
+     * Returns the number of files that have been written because they were new or their content changed.
+     */
+    public int getWrittenCount() {
+        return written.get();
+    }
+
+    /**
+     * Returns the number of files that haven't been written because their content didn't change.
+     */
+    public int getSkippedCount() {
+        return skipped.get();
+    }
+
+    /**
+     * Returns the number of obsolete files that have been removed.
+     */
+    public int getRemovedCount() {
+        return removed.get();
+    }
+
+    /**
+     * Returns {@code true} if the manifest has been loaded, so that files should be written using the
+     * {@link #update(File, Path)} method.
+     */
+    public boolean isLoaded() {
+        return outDir != null;
+    }
+
+    /**
+     * Calculates the path of the given file relative to the output directory, using always slashes as separators.
+     */
+    private String getRelativePath(File file) {
+        Path relative = outDir.toPath().relativize(file.getAbsoluteFile().toPath());
+        return relative.toString().replace(File.separatorChar, '/');
+    }
+
+    /**
+     * Calculates the hash of the content of the given file, as an hexadecimal string.
+     */
+    private String hash(Path file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance(HASH_ALGORITHM);
+        }
+        catch (NoSuchAlgorithmException exception) {
+            throw new IllegalStateException("Can't create message digest", exception);
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(HASH_BUFFER_SIZE);
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+        }
+        StringBuilder result = new StringBuilder();
+        for (byte b : digest.digest()) {
+            result.append(String.format("%02x", b));
+        }
+        return result.toString();
+    }
+}
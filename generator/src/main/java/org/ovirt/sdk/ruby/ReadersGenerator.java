@@ -20,10 +20,12 @@ import static java.util.stream.Collectors.joining;
 import static java.util.stream.Collectors.toList;
 
 import java.io.File;
-import java.io.IOException;
+import java.util.EnumSet;
 import java.util.List;
-import javax.enterprise.inject.spi.CDI;
+import java.util.Set;
+import java.util.stream.Stream;
 import javax.inject.Inject;
+import javax.inject.Provider;
 
 import org.ovirt.api.metamodel.concepts.EnumType;
 import org.ovirt.api.metamodel.concepts.Link;
@@ -34,8 +36,6 @@ import org.ovirt.api.metamodel.concepts.PrimitiveType;
 import org.ovirt.api.metamodel.concepts.StructMember;
 import org.ovirt.api.metamodel.concepts.StructType;
 import org.ovirt.api.metamodel.concepts.Type;
-import org.ovirt.api.metamodel.tool.Names;
-import org.ovirt.api.metamodel.tool.SchemaNames;
 
 /**
  * This class is responsible for generating the classes that create instances of model types from XML documents.
@@ -45,33 +45,61 @@ public class ReadersGenerator implements RubyGenerator {
     protected File out;
 
     // Reference to the objects used to generate the code:
-    @Inject private Names names;
-    @Inject private SchemaNames schemaNames;
     @Inject private RubyNames rubyNames;
+    @Inject private ModelIndexer modelIndexer;
+    @Inject private GeneratorOptions options;
 
-    // The buffer used to generate the Ruby code:
-    @Inject private RubyBuffer buffer;
+    // The index of the model that is being generated:
+    private ModelIndex index;
+
+    // The provider of the buffers used to generate the Ruby code, and the buffer currently in use:
+    @Inject private Provider<RubyBuffer> bufferProvider;
+    private RubyBuffer buffer;
+
+    // Reference to the object used to write the files:
+    @Inject private RubyFiles rubyFiles;
 
     public void setOut(File newOut) {
         out = newOut;
     }
 
+    public void setRubyNames(RubyNames newRubyNames) {
+        rubyNames = newRubyNames;
+    }
+
+    public void setModelIndexer(ModelIndexer newModelIndexer) {
+        modelIndexer = newModelIndexer;
+    }
+
+    public void setOptions(GeneratorOptions newOptions) {
+        options = newOptions;
+    }
+
+    public void setBufferProvider(Provider<RubyBuffer> newBufferProvider) {
+        bufferProvider = newBufferProvider;
+    }
+
+    public void setRubyFiles(RubyFiles newRubyFiles) {
+        rubyFiles = newRubyFiles;
+    }
+
+    @Override
+    public Set<ModelPart> getDependencies() {
+        return EnumSet.of(ModelPart.TYPES);
+    }
+
     public void generate(Model model) {
         // Calculate the file name:
         String fileName = rubyNames.getModulePath() + "/readers";
-        buffer = CDI.current().select(RubyBuffer.class).get();
+        buffer = bufferProvider.get();
         buffer.setFileName(fileName);
 
         // Generate the source:
+        index = modelIndexer.getIndex(model);
         generateSource(model);
 
         // Write the file:
-        try {
-            buffer.write(out);
-        }
-        catch (IOException exception) {
-            throw new IllegalStateException("Error writing readers file \"" + fileName + "\"", exception);
-        }
+        rubyFiles.write(buffer, out);
     }
 
     private void generateSource(Model model) {
@@ -80,32 +108,59 @@ public class ReadersGenerator implements RubyGenerator {
         buffer.beginModule(moduleName);
         buffer.addLine();
 
-        // Generate a reader for each struct type:
-        model.types()
-            .filter(StructType.class::isInstance)
-            .map(StructType.class::cast)
-            .sorted()
-            .forEach(this::generateReader);
-
-        // Generate code to register the readers:
-        model.types()
-            .filter(StructType.class::isInstance)
-            .map(StructType.class::cast)
-            .sorted()
-            .forEach(type -> {
-                Name typeName = type.getName();
-                String singularTag = schemaNames.getSchemaTagName(typeName);
-                String pluralTag = schemaNames.getSchemaTagName(names.getPlural(typeName));
+        if (options.isSplit()) {
+            // Generate a file for each reader, and the declarations that load them on demand:
+            RubyBuffer indexBuffer = buffer;
+            index.getStructTypes().forEach(type -> {
+                RubyName readerName = rubyNames.getReaderName(type);
+                generateClassFile(readerName, () -> generateReader(type));
+                indexBuffer.addAutoload(readerName);
+            });
+            buffer = indexBuffer;
+            buffer.addLine();
+
+            // Generate code to register the readers. Note that the readers are referenced only inside the lambdas,
+            // so that they aren't loaded till they are used for the first time:
+            index.getStructTypes().forEach(type -> {
+                ModelIndex.StructIndex struct = index.getStruct(type);
                 String className = rubyNames.getReaderName(type).getClassName();
-                buffer.addLine("Reader.register('%1$s', %2$s.method(:read_one))", singularTag, className);
-                buffer.addLine("Reader.register('%1$s', %2$s.method(:read_many))", pluralTag, className);
+                buffer.addLine(
+                    "Reader.register('%1$s', lambda { |reader| %2$s.read_one(reader) })",
+                    struct.getSingularTag(),
+                    className
+                );
+                buffer.addLine(
+                    "Reader.register('%1$s', lambda { |reader| %2$s.read_many(reader) })",
+                    struct.getPluralTag(),
+                    className
+                );
             });
+        }
+        else {
+            // Generate a reader for each struct type:
+            index.getStructTypes().forEach(this::generateReader);
+
+            // Generate code to register the readers:
+            index.getStructTypes().forEach(type -> {
+                ModelIndex.StructIndex struct = index.getStruct(type);
+                String className = rubyNames.getReaderName(type).getClassName();
+                buffer.addLine("Reader.register('%1$s', %2$s.method(:read_one))", struct.getSingularTag(), className);
+                buffer.addLine("Reader.register('%1$s', %2$s.method(:read_many))", struct.getPluralTag(), className);
+            });
+        }
 
         // End module:
         buffer.endModule(moduleName);
         buffer.addLine();
     }
 
+    private void generateClassFile(RubyName name, Runnable generator) {
+        rubyFiles.writeClassFile(out, name, classBuffer -> {
+            buffer = classBuffer;
+            generator.run();
+        });
+    }
+
     private void generateReader(StructType type) {
         // Begin class:
         RubyName typeName = rubyNames.getTypeName(type);
@@ -114,8 +169,25 @@ public class ReadersGenerator implements RubyGenerator {
         buffer.addLine("class %1$s < %2$s # :nodoc:", readerName.getClassName(), baseName.getClassName());
         buffer.addLine();
 
+        // Generate the names of the attributes and the table of handlers for the inner elements:
+        generateAttributeNames(type);
+        generateElementHandlers(type);
+
+        // For types that have native readers, check if the extension contains them. When it does the methods delegate
+        // to them, unless a selection of fields is given, as the native readers always read all the fields:
+        String tag = index.getStruct(type).getSingularTag();
+        boolean nativeReader = options.isNativeReader(tag);
+        if (nativeReader) {
+            buffer.addLine("NATIVE = defined?(NativeReaders) ? NativeReaders.respond_to?(:read_%1$s_one) : false", tag);
+            buffer.addLine();
+        }
+
         // Generate the method that reads one instance:
-        buffer.addLine("def self.read_one(reader)");
+        buffer.addLine("def self.read_one(reader, fields = nil)");
+        if (nativeReader) {
+            buffer.addLine("return NativeReaders.read_%1$s_one(reader) if NATIVE && fields.nil?", tag);
+            buffer.addLine();
+        }
         buffer.addLine(  "# Do nothing if there aren't more tags:");
         buffer.addLine(  "return nil unless reader.forward");
         buffer.addLine();
@@ -123,7 +195,6 @@ public class ReadersGenerator implements RubyGenerator {
         buffer.addLine(  "object = %s.new", typeName.getClassName());
         buffer.addLine();
         buffer.addLine(  "# Process the attributes:");
-        buffer.addLine(  "object.href = reader.get_attribute('href')");
         generateAttributesRead(type);
         buffer.addLine();
         buffer.addLine(  "# Discard the start tag:");
@@ -143,7 +214,11 @@ public class ReadersGenerator implements RubyGenerator {
         buffer.addLine();
 
         // Generate the method that reads many instances:
-        buffer.addLine("def self.read_many(reader)");
+        buffer.addLine("def self.read_many(reader, fields = nil)");
+        if (nativeReader) {
+            buffer.addLine("return NativeReaders.read_%1$s_many(reader) if NATIVE && fields.nil?", tag);
+            buffer.addLine();
+        }
         buffer.addLine(  "# Do nothing if there aren't more tags:");
         buffer.addLine(  "list = %1$s.new", rubyNames.getBaseListName().getClassName());
         buffer.addLine(  "return list unless reader.forward");
@@ -158,7 +233,7 @@ public class ReadersGenerator implements RubyGenerator {
         buffer.addLine();
         buffer.addLine(  "# Process the inner elements:");
         buffer.addLine(  "while reader.forward do");
-        buffer.addLine(    "list << read_one(reader)");
+        buffer.addLine(    "list << read_one(reader, fields)");
         buffer.addLine(  "end");
         buffer.addLine();
         buffer.addLine(  "# Discard the end tag:");
@@ -169,12 +244,9 @@ public class ReadersGenerator implements RubyGenerator {
         buffer.addLine();
 
         // Generate the method that reads links to lists:
-        List<Link> listLinks = type.links()
-            .filter(link -> link.getType() instanceof ListType)
-            .sorted()
-            .collect(toList());
+        List<Link> listLinks = index.getStruct(type).getListLinks();
         if (!listLinks.isEmpty()) {
-            buffer.addLine("def self.read_link(reader, object)");
+            buffer.addLine("def self.read_link(reader, object, fields = nil)");
             buffer.addLine(  "# Process the attributes:");
             buffer.addLine(  "rel = reader.get_attribute('rel')");
             buffer.addLine(  "href = reader.get_attribute('href')");
@@ -187,7 +259,11 @@ public class ReadersGenerator implements RubyGenerator {
                 String property = rubyNames.getMemberStyleName(name);
                 String rel = name.words().map(String::toLowerCase).collect(joining());
                 buffer.addLine("when '%1$s'", rel);
-                buffer.addLine(  "object.%1$s = list", property);
+                buffer.addLine(
+                    "object.%1$s = list if fields.nil? || fields.key?('%2$s')",
+                    property,
+                    index.getMember(link).getTag()
+                );
             });
             buffer.addLine(    "end");
             buffer.addLine(  "end");
@@ -203,40 +279,76 @@ public class ReadersGenerator implements RubyGenerator {
         buffer.addLine();
     }
 
-    private void generateAttributesRead(StructType type) {
-        type.attributes().sorted().forEach(this::generateAttributeRead);
-        type.links().sorted().forEach(this::generateAttributeRead);
+    private void generateAttributeNames(StructType type) {
+        // Types without attributes only need the 'href' attribute, and they get it directly:
+        List<StructMember> members = getAttributeMembers(type);
+        if (members.isEmpty()) {
+            return;
+        }
+
+        // Generate a frozen array containing the names of the attributes, so that they can be fetched with one call
+        // that walks the attributes of the element only once:
+        String names = members.stream()
+            .map(member -> String.format(", '%1$s'", index.getMember(member).getTag()))
+            .collect(joining());
+        buffer.addLine("ATTRIBUTE_NAMES = ['href'%1$s].freeze", names);
+        buffer.addLine();
     }
 
-    private void generateAttributeRead(StructMember member) {
-        Name name = member.getName();
-        Type type = member.getType();
-        if (type instanceof PrimitiveType || type instanceof EnumType) {
-            String property = rubyNames.getMemberStyleName(name);
-            String tag = schemaNames.getSchemaTagName(name);
-            buffer.addLine("value = reader.get_attribute('%s')", tag);
-            buffer.addLine("object.%1$s = value if not value.nil?", property);
+    private void generateAttributesRead(StructType type) {
+        List<StructMember> members = getAttributeMembers(type);
+        if (members.isEmpty()) {
+            buffer.addLine("object.href = reader.get_attribute('href')");
+            return;
         }
+        buffer.addLine("values = reader.get_attributes(ATTRIBUTE_NAMES)");
+        buffer.addLine("object.href = values[0]");
+        for (int i = 0; i < members.size(); i++) {
+            StructMember member = members.get(i);
+            String property = rubyNames.getMemberStyleName(member.getName());
+            buffer.addLine("value = values[%1$d]", i + 1);
+            if (member.getType() instanceof EnumType) {
+                RubyName enumName = rubyNames.getTypeName(member.getType());
+                buffer.addLine(
+                    "object.%1$s = %2$s::VALUES.fetch(value, value) if not value.nil?",
+                    property,
+                    enumName.getClassName()
+                );
+            }
+            else {
+                buffer.addLine("object.%1$s = value if not value.nil?", property);
+            }
+        }
+    }
+
+    /**
+     * Returns the attributes and links that can be read from the attributes of the XML element, the ones whose type is
+     * primitive or enum.
+     */
+    private List<StructMember> getAttributeMembers(StructType type) {
+        ModelIndex.StructIndex struct = index.getStruct(type);
+        return Stream.concat(struct.getAttributes().stream(), struct.getLinks().stream())
+            .filter(member -> member.getType() instanceof PrimitiveType || member.getType() instanceof EnumType)
+            .collect(toList());
     }
 
     private void generateElementsRead(StructType type) {
-        long attributesCount = type.attributes().count();
-        long linksCount = type.links().count();
-        long listLinksCount = type.links()
-            .filter(link -> link.getType() instanceof ListType)
-            .count();
-        long membersCount = attributesCount + linksCount;
-        if (membersCount > 0) {
+        ModelIndex.StructIndex struct = index.getStruct(type);
+        if (!struct.getMembers().isEmpty()) {
+            // Elements that aren't in the selection of fields are skipped without reading them. Links to lists are
+            // always passed to their handler, as it checks the selection using the relationship name:
             buffer.addLine("while reader.forward do");
-            buffer.addLine(  "case reader.node_name");
-            type.attributes().sorted().forEach(this::generateElementRead);
-            type.links().sorted().forEach(this::generateElementRead);
-            if (listLinksCount > 0) {
-                buffer.addLine("when 'link'");
-                buffer.addLine(  "read_link(reader, object)");
+            buffer.addLine(  "tag = reader.node_name");
+            buffer.addLine(  "handler = ELEMENT_HANDLERS[tag]");
+            if (struct.getListLinks().isEmpty()) {
+                buffer.addLine("if handler.nil? || !fields.nil? && !fields.key?(tag)");
+            }
+            else {
+                buffer.addLine("if handler.nil? || !fields.nil? && !fields.key?(tag) && tag != 'link'");
             }
-            buffer.addLine(  "else");
             buffer.addLine(    "reader.next_element");
+            buffer.addLine(  "else");
+            buffer.addLine(    "handler.call(reader, object, fields)");
             buffer.addLine(  "end");
             buffer.addLine("end");
         }
@@ -245,104 +357,156 @@ public class ReadersGenerator implements RubyGenerator {
         }
     }
 
-    private void generateElementRead(StructMember member) {
+    private void generateElementHandlers(StructType type) {
+        // Types without members don't need handlers, as the inner elements are ignored:
+        ModelIndex.StructIndex struct = index.getStruct(type);
+        if (struct.getMembers().isEmpty()) {
+            return;
+        }
+
+        // Generate a frozen hash containing for each tag the lambda that reads the corresponding element, so that
+        // finding the handler is a single hash lookup. The lambdas receive the selection of fields of the object, and
+        // pass the selection for the member to the readers of nested structs:
+        buffer.addLine("ELEMENT_HANDLERS = {");
+        struct.getAttributes().forEach(this::generateElementHandler);
+        struct.getLinks().forEach(this::generateElementHandler);
+        if (!struct.getListLinks().isEmpty()) {
+            buffer.addLine("'link' => lambda { |reader, object, fields| read_link(reader, object, fields) },");
+        }
+        buffer.addLine("}.freeze");
+        buffer.addLine();
+    }
+
+    private void generateElementHandler(StructMember member) {
         Name name = member.getName();
         Type type = member.getType();
         String property = rubyNames.getMemberStyleName(name);
-        String tag = schemaNames.getSchemaTagName(name);
+        String tag = index.getMember(member).getTag();
         String variable = String.format("object.%1$s", property);
-        buffer.addLine("when '%1$s'", tag);
+        String statement;
         if (type instanceof PrimitiveType) {
-            generateReadPrimitive(member, variable);
+            statement = getReadPrimitive(member, variable);
         }
         else if (type instanceof EnumType) {
-            generateReadEnum(member, variable);
+            statement = getReadEnum(member, variable);
+        }
+        else if (isLazy(type)) {
+            statement = String.format("object.lazy_store(:%1$s, reader.read_outer_xml)", property);
         }
         else if (type instanceof StructType) {
-            generateReadStruct(member, variable);
+            statement = getReadStruct(member, variable);
         }
         else if (type instanceof ListType) {
-            generateReadList(member, variable);
+            statement = getReadList(member, variable);
         }
         else {
-            buffer.addLine("reader.next_element");
+            statement = "reader.next_element";
         }
+        buffer.addLine("'%1$s' => lambda { |reader, object, fields| %2$s },", tag, statement);
     }
 
-    private void generateReadPrimitive(StructMember member, String variable) {
+    /**
+     * Checks if the given member type is read lazily, storing the XML text of the element in the object so that the
+     * getter parses it when it is used for the first time. This is the case for structs and lists of structs when the
+     * lazy mode is enabled.
+     */
+    private boolean isLazy(Type type) {
+        if (!options.isLazy()) {
+            return false;
+        }
+        if (type instanceof ListType) {
+            type = ((ListType) type).getElementType();
+        }
+        return type instanceof StructType;
+    }
+
+    private String getReadPrimitive(StructMember member, String variable) {
         Type type = member.getType();
         Model model = type.getModel();
         if (type == model.getStringType()) {
-            buffer.addLine("%1$s = Reader.read_string(reader)", variable);
+            return String.format("%1$s = Reader.read_string(reader)", variable);
         }
         else if (type == model.getBooleanType()) {
-            buffer.addLine("%1$s = Reader.read_boolean(reader)", variable);
+            return String.format("%1$s = Reader.read_boolean(reader)", variable);
         }
         else if (type == model.getIntegerType()) {
-            buffer.addLine("%1$s = Reader.read_integer(reader)", variable);
+            return String.format("%1$s = Reader.read_integer(reader)", variable);
         }
         else if (type == model.getDecimalType()) {
-            buffer.addLine("%1$s = Reader.read_decimal(reader)", variable);
+            return String.format("%1$s = Reader.read_decimal(reader)", variable);
         }
         else if (type == model.getDateType()) {
-            buffer.addLine("%1$s = Reader.read_date(reader)", variable);
+            return String.format("%1$s = Reader.read_date(reader)", variable);
         }
         else {
-            buffer.addLine("reader.next_element");
+            return "reader.next_element";
         }
     }
 
-    private void generateReadEnum(StructMember member, String variable) {
-        buffer.addLine("%1$s = Reader.read_string(reader)", variable);
+    private String getReadEnum(StructMember member, String variable) {
+        RubyName enumName = rubyNames.getTypeName(member.getType());
+        return String.format("%1$s = Reader.read_enum(reader, %2$s::VALUES)", variable, enumName.getClassName());
     }
 
-    private void generateReadStruct(StructMember member, String variable) {
+    private String getReadStruct(StructMember member, String variable) {
         RubyName readerName = rubyNames.getReaderName(member.getType());
-        buffer.addLine("%1$s = %2$s.read_one(reader)", variable, readerName.getClassName());
+        String tag = index.getMember(member).getTag();
+        return String.format(
+            "%1$s = %2$s.read_one(reader, fields && fields['%3$s'])",
+            variable,
+            readerName.getClassName(),
+            tag
+        );
     }
 
-    private void generateReadList(StructMember member, String variable) {
+    private String getReadList(StructMember member, String variable) {
         ListType type = (ListType) member.getType();
         Type elementType = type.getElementType();
         if (elementType instanceof PrimitiveType) {
-            generateReadPrimitives((PrimitiveType) elementType, variable);
+            return getReadPrimitives((PrimitiveType) elementType, variable);
         }
         else if (elementType instanceof EnumType) {
-            generateReadEnum((EnumType) elementType, variable);
+            return getReadEnums((EnumType) elementType, variable);
         }
         else if (elementType instanceof StructType) {
             RubyName readerName = rubyNames.getReaderName(elementType);
-            buffer.addLine("%1$s = %2$s.read_many(reader)", variable, readerName.getClassName());
+            String tag = index.getMember(member).getTag();
+            return String.format(
+                "%1$s = %2$s.read_many(reader, fields && fields['%3$s'])",
+                variable,
+                readerName.getClassName(),
+                tag
+            );
         }
         else {
-            buffer.addLine("reader.next_element");
+            return "reader.next_element";
         }
     }
 
-    private void generateReadPrimitives(PrimitiveType type, String variable) {
+    private String getReadPrimitives(PrimitiveType type, String variable) {
         Model model = type.getModel();
         if (type == model.getStringType()) {
-            buffer.addLine("%1$s = Reader.read_strings(reader)", variable);
+            return String.format("%1$s = Reader.read_strings(reader)", variable);
         }
         else if (type == model.getBooleanType()) {
-            buffer.addLine("%1$s = Reader.read_booleans(reader)", variable);
+            return String.format("%1$s = Reader.read_booleans(reader)", variable);
         }
         else if (type == model.getIntegerType()) {
-            buffer.addLine("%1$s = Reader.read_integers(reader)", variable);
+            return String.format("%1$s = Reader.read_integers(reader)", variable);
         }
         else if (type == model.getDecimalType()) {
-            buffer.addLine("%1$s = Reader.read_decimals(reader)", variable);
+            return String.format("%1$s = Reader.read_decimals(reader)", variable);
         }
         else if (type == model.getDateType()) {
-            buffer.addLine("%1$s = Reader.read_dates(reader)", variable);
+            return String.format("%1$s = Reader.read_dates(reader)", variable);
         }
         else {
-            buffer.addLine("reader.next_element");
+            return "reader.next_element";
         }
     }
 
-    private void generateReadEnum(EnumType type, String variable) {
-        buffer.addLine("%1$s = Reader.read_strings(reader)", variable);
+    private String getReadEnums(EnumType type, String variable) {
+        RubyName enumName = rubyNames.getTypeName(type);
+        return String.format("%1$s = Reader.read_enums(reader, %2$s::VALUES)", variable, enumName.getClassName());
     }
 }
-
@@ -16,21 +16,28 @@ limitations under the License.
 
 package org.ovirt.sdk.ruby;
 
+import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Deque;
-import java.util.Formatter;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.UUID;
 import javax.enterprise.context.Dependent;
 import javax.inject.Inject;
 
@@ -41,12 +48,25 @@ import org.ovirt.api.metamodel.concepts.Parameter;
  * This class is a buffer intended to simplify generation of Ruby source code. It stores the name of the module, the
  * list of requires and the rest of the source separately, so that requires can be added on demand while generating the
  * rest of the source.
+ *
+ * When the {@link GeneratorOptions#isStreaming() streaming} option is enabled the lines of the body aren't kept in
+ * memory, instead they are written to a temporary file as they are added. When the buffer is written the license and
+ * the requires are written to the output file, and then the content of the temporary file is transferred after them.
+ *
+ * When the {@link GeneratorOptions#isLean() lean} option is enabled the methods that add comments and Yard tags don't
+ * add anything, so the generated code contains only the license header and the code itself.
  */
 @Dependent
 public class RubyBuffer {
+    // The size of the buffer used to write lines to the temporary file when streaming:
+    private static final int STREAMING_BUFFER_SIZE = 64 * 1024;
+
     // Reference to the object used to generate Ruby names:
     @Inject private RubyNames rubyNames;
     @Inject private YardDoc yardDoc;
+    @Inject private GeneratorOptions options;
+    @Inject private OutputManifest manifest;
+    @Inject private GeneratorMetrics metrics;
 
     // The name of the file:
     private String fileName;
@@ -60,16 +80,54 @@ public class RubyBuffer {
     // The lines of the body of the class:
     private List<String> lines = new ArrayList<>();
 
+    // The temporary file and the writer used to store the lines of the body when streaming is enabled. They are
+    // created when the first line is added.
+    private Path bodyFile;
+    private Writer bodyWriter;
+
+    // The number of lines of the body, needed because when streaming is enabled they aren't kept in memory:
+    private int bodyLines;
+
     // The current indentation level:
     private int level;
 
+    // The buffer used to format lines, reused to avoid creating a new one for each line:
+    private final StringBuilder formatted = new StringBuilder();
+
     /**
      * Sets the file name.
      */
+    public void setRubyNames(RubyNames newRubyNames) {
+        rubyNames = newRubyNames;
+    }
+
+    public void setYardDoc(YardDoc newYardDoc) {
+        yardDoc = newYardDoc;
+    }
+
+    public void setOptions(GeneratorOptions newOptions) {
+        options = newOptions;
+    }
+
+    public void setManifest(OutputManifest newManifest) {
+        manifest = newManifest;
+    }
+
+    public void setMetrics(GeneratorMetrics newMetrics) {
+        metrics = newMetrics;
+    }
+
     public void setFileName(String newFileName) {
         fileName = newFileName;
     }
 
+    /**
+     * Returns the file name.
+     */
+    public String getFileName() {
+        return fileName;
+    }
+
     /**
      * Begins the given module name, which may be separated with {@code ::}, and writes the corresponding {@code module}
      * statements.
@@ -92,6 +150,14 @@ public class RubyBuffer {
         });
     }
 
+    /**
+     * Adds an {@code autoload} declaration that loads the file of the given class the first time that the class is
+     * used.
+     */
+    public void addAutoload(RubyName name) {
+        addLine("autoload :%1$s, '%2$s'", name.getClassName(), name.getFileName());
+    }
+
     /**
      * Adds a line to the file. If the line contains new line characters then it will be broken and multiple lines and
      * each one will be processed in sequence. For example, if these lines aren't indented, the result will be indented
@@ -99,11 +165,75 @@ public class RubyBuffer {
      */
     public void addLine(String line) {
         if (line != null) {
-            String[] parts = line.split("\\n");
-            for (String part : parts) {
-                addLineNoSplit(part);
+            addLines(line, false);
+        }
+    }
+
+    /**
+     * Splits the given text into lines and adds each of them as a line or as a comment. The result is the same that
+     * would be obtained splitting the text with {@code text.split("\\n")}, but without using regular expressions, and
+     * without creating an array containing the parts.
+     */
+    private void addLines(CharSequence text, boolean comment) {
+        int length = text.length();
+        if (length == 0) {
+            addPart("", comment);
+            return;
+        }
+        int start = 0;
+        int empty = 0;
+        while (start <= length) {
+            int end = start;
+            while (end < length && text.charAt(end) != '\n') {
+                end++;
             }
+            if (end == start) {
+                // Empty parts are added only if they are followed by a non empty part, like the split method does:
+                empty++;
+            }
+            else {
+                for (; empty > 0; empty--) {
+                    addPart("", comment);
+                }
+                addPart(text.subSequence(start, end).toString(), comment);
+            }
+            start = end + 1;
+        }
+    }
+
+    private void addPart(String part, boolean comment) {
+        if (comment) {
+            addCommentNoSplit(part);
+        }
+        else {
+            addLineNoSplit(part);
+        }
+    }
+
+    /**
+     * Splits the given text into lines. The result is the same that would be obtained with
+     * {@code text.split("\\n")}, but without using regular expressions.
+     */
+    private static String[] splitLines(CharSequence text) {
+        List<String> parts = new ArrayList<>();
+        int length = text.length();
+        int start = 0;
+        while (start <= length) {
+            int end = start;
+            while (end < length && text.charAt(end) != '\n') {
+                end++;
+            }
+            parts.add(text.subSequence(start, end).toString());
+            start = end + 1;
+        }
+        if (length > 0) {
+            int size = parts.size();
+            while (size > 0 && parts.get(size - 1).isEmpty()) {
+                size--;
+            }
+            parts = parts.subList(0, size);
         }
+        return parts.toArray(new String[parts.size()]);
     }
 
     /**
@@ -114,6 +244,7 @@ public class RubyBuffer {
         boolean isBegin =
             line.endsWith("(") ||
             line.endsWith("[") ||
+            line.endsWith("{") ||
             line.endsWith("|") ||
             line.equals("begin") ||
             line.equals("else") ||
@@ -130,6 +261,8 @@ public class RubyBuffer {
         boolean isEnd =
             line.equals(")") ||
             line.equals("]") ||
+            line.equals("}") ||
+            line.startsWith("}.") ||
             line.equals("else") ||
             line.equals("else") ||
             line.equals("end") ||
@@ -143,14 +276,8 @@ public class RubyBuffer {
             }
         }
 
-        // Indent the line and add it to the list:
-        StringBuilder buffer = new StringBuilder(level * 2 + line.length());
-        for (int i = 0; i < level; i++) {
-            buffer.append("  ");
-        }
-        buffer.append(line);
-        line = buffer.toString();
-        lines.add(line);
+        // Indent the line and add it to the body:
+        addIndentedLine(null, line);
 
         // Increase the indentation if the line is the begin of a block:
         if (isBegin) {
@@ -170,11 +297,17 @@ public class RubyBuffer {
      * the {@link String#format(String, Object...)} method.
      */
     public void addLine(String format, Object ... args) {
-        StringBuilder buffer = new StringBuilder();
-        Formatter formatter = new Formatter(buffer);
-        formatter.format(format, args);
-        String line = buffer.toString();
-        addLine(line);
+        addLines(format(format, args), false);
+    }
+
+    /**
+     * Formats the given arguments using the precompiled template that corresponds to the given format. The result is
+     * stored in a buffer that is reused, so it must be consumed before calling this method again.
+     */
+    private StringBuilder format(String format, Object ... args) {
+        formatted.setLength(0);
+        RubyTemplate.compile(format).format(formatted, args);
+        return formatted;
     }
 
     /**
@@ -183,11 +316,8 @@ public class RubyBuffer {
      * indented anyhow.
      */
     public void addComment(String line) {
-        if (line != null) {
-            String[] parts = line.split("\\n");
-            for (String part : parts) {
-                addCommentNoSplit(part);
-            }
+        if (line != null && !options.isLean()) {
+            addLines(line, true);
         }
     }
 
@@ -195,14 +325,63 @@ public class RubyBuffer {
      * Adds a comment to the file without taking into account new line characters.
      */
     private void addCommentNoSplit(String line) {
-        StringBuilder buffer = new StringBuilder(2 + level * 2 + line.length());
-        for (int i = 0; i < level; i++) {
-            buffer.append("  ");
+        addIndentedLine("# ", line);
+    }
+
+    /**
+     * Adds a line to the body, indented according to the current level. If streaming is enabled the line is written
+     * directly to the temporary file, otherwise it is added to the list of lines.
+     *
+     * @param prefix an optional prefix that will be added after the indentation and before the text of the line
+     * @param line the text of the line
+     */
+    private void addIndentedLine(String prefix, String line) {
+        bodyLines++;
+        if (options.isStreaming()) {
+            try {
+                Writer writer = getBodyWriter();
+                for (int i = 0; i < level; i++) {
+                    writer.write("  ");
+                }
+                if (prefix != null) {
+                    writer.write(prefix);
+                }
+                writer.write(line);
+                writer.write('\n');
+            }
+            catch (IOException exception) {
+                throw new UncheckedIOException("Error writing line to temporary file \"" + bodyFile + "\"", exception);
+            }
+        }
+        else {
+            int length = level * 2 + line.length() + (prefix != null? prefix.length(): 0);
+            StringBuilder buffer = new StringBuilder(length);
+            for (int i = 0; i < level; i++) {
+                buffer.append("  ");
+            }
+            if (prefix != null) {
+                buffer.append(prefix);
+            }
+            buffer.append(line);
+            lines.add(buffer.toString());
+        }
+    }
+
+    /**
+     * Returns the writer used to store the lines of the body when streaming is enabled, creating the temporary file
+     * if it doesn't exist yet.
+     */
+    private Writer getBodyWriter() throws IOException {
+        if (bodyWriter == null) {
+            bodyFile = Files.createTempFile("ruby-buffer-", ".rb");
+            bodyFile.toFile().deleteOnExit();
+            FileChannel channel = FileChannel.open(bodyFile, StandardOpenOption.WRITE);
+            bodyWriter = new BufferedWriter(
+                Channels.newWriter(channel, StandardCharsets.UTF_8.newEncoder(), STREAMING_BUFFER_SIZE),
+                STREAMING_BUFFER_SIZE
+            );
         }
-        buffer.append("# ");
-        buffer.append(line);
-        line = buffer.toString();
-        lines.add(line);
+        return bodyWriter;
     }
 
     /**
@@ -217,11 +396,10 @@ public class RubyBuffer {
      * using the {@link String#format(String, Object...)} method.
      */
     public void addComment(String format, Object ... args) {
-        StringBuilder buffer = new StringBuilder();
-        Formatter formatter = new Formatter(buffer);
-        formatter.format(format, args);
-        String line = buffer.toString();
-        addComment(line);
+        if (options.isLean()) {
+            return;
+        }
+        addLines(format(format, args), true);
     }
 
     /**
@@ -234,11 +412,12 @@ public class RubyBuffer {
      * @param args the arguments used to create the text of the tag
      */
     public void addYardTag(String tag, String format, Object ... args) {
+        if (options.isLean()) {
+            return;
+        }
+
         // Format the text and split it into lines:
-        StringBuilder text = new StringBuilder();
-        Formatter formatter = new Formatter(text);
-        formatter.format(format, args);
-        String[] lines = text.toString().split("\\n");
+        String[] lines = splitLines(format(format, args));
 
         // The first line must be prefixed with the name of the tag:
         StringBuilder first = new StringBuilder();
@@ -270,6 +449,9 @@ public class RubyBuffer {
      * Adds a comment containing a Yard {@code @param} tag for the given parameter.
      */
     public void addYardParam(Parameter parameter, String doc) {
+        if (options.isLean()) {
+            return;
+        }
         if (doc == null) {
             doc = parameter.getDoc();
         }
@@ -296,6 +478,9 @@ public class RubyBuffer {
      * Adds a comment containing a Yard {@code @option} tag for the given parameter.
      */
     public void addYardOption(Parameter parameter, String doc) {
+        if (options.isLean()) {
+            return;
+        }
         if (doc == null) {
             doc = parameter.getDoc();
         }
@@ -315,6 +500,9 @@ public class RubyBuffer {
      * Adds a comment containing a Yard {@code @return} tag for the given parameter.
      */
     public void addYardReturn(Parameter parameter) {
+        if (options.isLean()) {
+            return;
+        }
         addYardTag(
             "return",
             "[%1$s]",
@@ -323,9 +511,9 @@ public class RubyBuffer {
     }
 
     /**
-     * Generates the complete source code of the class.
+     * Generates the header of the source code, containing the license and the requires.
      */
-    public String toString() {
+    private String getHeader() {
         StringBuilder buffer = new StringBuilder();
 
         // License:
@@ -356,10 +544,53 @@ public class RubyBuffer {
         }
         buffer.append("\n");
 
+        return buffer.toString();
+    }
+
+    /**
+     * Counts the lines of the given text, which is expected to end with a line break.
+     */
+    private static int countLines(String text) {
+        int count = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == '\n') {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Generates the complete source code of the class. Note that when streaming is enabled this needs to read the
+     * temporary file that contains the body, so it should be avoided for large files.
+     */
+    public String toString() {
+        return toString(getHeader());
+    }
+
+    private String toString(String header) {
+        StringBuilder buffer = new StringBuilder();
+
+        // Header:
+        buffer.append(header);
+
         // Body:
-        for (String line : lines) {
-            buffer.append(line);
-            buffer.append("\n");
+        if (options.isStreaming()) {
+            if (bodyFile != null) {
+                try {
+                    bodyWriter.flush();
+                    buffer.append(new String(Files.readAllBytes(bodyFile), StandardCharsets.UTF_8));
+                }
+                catch (IOException exception) {
+                    throw new UncheckedIOException("Error reading temporary file \"" + bodyFile + "\"", exception);
+                }
+            }
+        }
+        else {
+            for (String line : lines) {
+                buffer.append(line);
+                buffer.append("\n");
+            }
         }
 
         return buffer.toString();
@@ -369,10 +600,16 @@ public class RubyBuffer {
      * Creates a {@code .rb} source file and writes the source. The required intermediate directories will be created
      * if they don't exist.
      *
+     * The source is first written to a temporary file in the same directory. If the {@link OutputManifest manifest}
+     * has been loaded then it decides if the file needs to be replaced, otherwise the temporary file always replaces
+     * the existing file.
+     *
      * @param dir the base directory for the source code
      * @throws IOException if something fails while creating or writing the file
      */
     public void write(File dir) throws IOException {
+        long start = System.nanoTime();
+
         // Calculate the complete fille name:
         File file = new File(dir, fileName.replace('/', File.separatorChar) + ".rb");
 
@@ -380,10 +617,62 @@ public class RubyBuffer {
         File parent = file.getParentFile();
         FileUtils.forceMkdir(parent);
 
-        // Write the file:
-        System.out.println("Writing file \"" + file.getAbsolutePath() + "\".");
-        try (Writer writer = new OutputStreamWriter(new FileOutputStream(file), StandardCharsets.UTF_8)) {
-            writer.write(toString());
+        // Write the source to a temporary file. Note that this file isn't created with Files.createTempFile because
+        // that would give it restricted permissions, and they would be kept when the file is moved.
+        Path temp = parent.toPath().resolve("." + file.getName() + "." + UUID.randomUUID() + ".tmp");
+        try {
+            String header = getHeader();
+            if (options.isStreaming()) {
+                writeStreaming(temp, header);
+            }
+            else {
+                Files.write(temp, toString(header).getBytes(StandardCharsets.UTF_8));
+            }
+            long bytes = Files.size(temp);
+
+            // Replace the file:
+            if (manifest.isLoaded()) {
+                manifest.update(file, temp);
+            }
+            else {
+                System.out.println("Writing file \"" + file.getAbsolutePath() + "\".");
+                Files.move(temp, file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+
+            // Update the metrics:
+            metrics.recordWrite(countLines(header) + bodyLines, bytes, System.nanoTime() - start);
+        }
+        finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+
+    /**
+     * Writes the header to the given file, and then transfers the body from the temporary file, without loading it in
+     * memory. The temporary file is deleted once it has been transferred.
+     */
+    private void writeStreaming(Path file, String header) throws IOException {
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer bytes = ByteBuffer.wrap(header.getBytes(StandardCharsets.UTF_8));
+            while (bytes.hasRemaining()) {
+                out.write(bytes);
+            }
+            if (bodyWriter != null) {
+                bodyWriter.close();
+                bodyWriter = null;
+                try (FileChannel in = FileChannel.open(bodyFile, StandardOpenOption.READ)) {
+                    long position = 0;
+                    long size = in.size();
+                    while (position < size) {
+                        position += in.transferTo(position, size - position, out);
+                    }
+                }
+                finally {
+                    Files.delete(bodyFile);
+                    bodyFile = null;
+                }
+            }
         }
     }
 }
@@ -0,0 +1,98 @@
+/*
+Copyright (c) 2016 Red Hat, Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+package org.ovirt.sdk.ruby;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Consumer;
+import javax.enterprise.context.ApplicationScoped;
+import javax.inject.Inject;
+import javax.inject.Provider;
+
+/**
+ * This class contains the methods that the generators use to write the files that they generate, in particular the
+ * files that contain only one class and the index files that load them on demand, as used when the
+ * {@link GeneratorOptions#isSplit() split} option is enabled.
+ *
+ * Note that the order in which the class files are generated isn't relevant, as the index files declare them with
+ * {@code autoload}, so each class, and its base, is loaded on demand the first time that it is used.
+ */
+@ApplicationScoped
+public class RubyFiles {
+    // Reference to the objects used to generate the code:
+    @Inject private RubyNames rubyNames;
+    @Inject private Provider<RubyBuffer> bufferProvider;
+
+    public void setRubyNames(RubyNames newRubyNames) {
+        rubyNames = newRubyNames;
+    }
+
+    public void setBufferProvider(Provider<RubyBuffer> newBufferProvider) {
+        bufferProvider = newBufferProvider;
+    }
+
+    /**
+     * Generates a file that contains only one class. A new buffer is created, with the name of the file and the
+     * declaration of the module already added, and then it is passed to the given generator, which should add the
+     * class.
+     *
+     * @param outDir the directory where the file will be written
+     * @param name the name of the class
+     * @param generator the code that adds the class to the buffer
+     */
+    public void writeClassFile(File outDir, RubyName name, Consumer<RubyBuffer> generator) {
+        RubyBuffer buffer = bufferProvider.get();
+        buffer.setFileName(name.getFileName());
+        buffer.beginModule(name.getModuleName());
+        buffer.addLine();
+        generator.accept(buffer);
+        buffer.endModule(name.getModuleName());
+        buffer.addLine();
+        write(buffer, outDir);
+    }
+
+    /**
+     * Generates an index file that contains only the declarations that load the given classes on demand.
+     *
+     * @param outDir the directory where the file will be written
+     * @param fileName the name of the index file, without the extension
+     * @param names the names of the classes
+     */
+    public void writeIndexFile(File outDir, String fileName, List<RubyName> names) {
+        RubyBuffer buffer = bufferProvider.get();
+        buffer.setFileName(fileName);
+        buffer.beginModule(rubyNames.getModuleName());
+        buffer.addLine();
+        names.forEach(buffer::addAutoload);
+        buffer.addLine();
+        buffer.endModule(rubyNames.getModuleName());
+        buffer.addLine();
+        write(buffer, outDir);
+    }
+
+    /**
+     * Writes the given buffer to the given directory, reporting failures with an {@link IllegalStateException}.
+     */
+    public void write(RubyBuffer buffer, File outDir) {
+        try {
+            buffer.write(outDir);
+        }
+        catch (IOException exception) {
+            throw new IllegalStateException("Error writing file \"" + buffer.getFileName() + "\"", exception);
+        }
+    }
+}
@@ -18,13 +18,16 @@ package org.ovirt.sdk.ruby;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Set;
 
 import org.ovirt.api.metamodel.concepts.Model;
 
 /**
  * The interface to be implemented by code generators. The tool will locate all the code generators, and for each
  * of them it will set the output file and invoke the {@link #generate(Model)} method. No specific order will be
- * used when there are multiple generators.
+ * used when there are multiple generators, and they may run concurrently in different threads, so implementations
+ * must not modify the model or any other shared object.
  */
 public interface RubyGenerator {
     /**
@@ -36,5 +39,22 @@ public interface RubyGenerator {
      * Generates the code for the given model.
      */
     void generate(Model model) throws IOException;
+
+    /**
+     * Returns the parts of the model that are used by this generator. When the model changes in watch mode the
+     * generator will run again only if any of these parts has changed. The default is all the parts of the model.
+     */
+    default Set<ModelPart> getDependencies() {
+        return EnumSet.allOf(ModelPart.class);
+    }
+
+    /**
+     * Returns {@code true} if the generator writes documentation comments to the output directory. Only these
+     * generators run when the documented code is generated to the documentation directory. The default is
+     * {@code false}.
+     */
+    default boolean isDocumented() {
+        return false;
+    }
 }
 
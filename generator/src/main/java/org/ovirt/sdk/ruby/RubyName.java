@@ -19,36 +19,32 @@ package org.ovirt.sdk.ruby;
 /**
  * This class represents the fully qualified name of a Ruby class, composed by the module name, the class name and the
  * name of the file where it should be stored.
+ *
+ * Instances are immutable, so they can be cached and shared by generators running in different threads.
  */
-public class RubyName {
-    private String moduleName;
-    private String className;
-    private String fileName;
+public final class RubyName {
+    private final String moduleName;
+    private final String className;
+    private final String fileName;
+
+    public RubyName(String moduleName, String className, String fileName) {
+        this.moduleName = moduleName;
+        this.className = className;
+        this.fileName = fileName;
+    }
 
     public String getModuleName() {
         return moduleName;
     }
 
-    public void setModuleName(String newModuleName) {
-        moduleName = newModuleName;
-    }
-
     public String getClassName() {
         return className;
     }
 
-    public void setClassName(String newClassName) {
-        className = newClassName;
-    }
-
     public String getFileName() {
         return fileName;
     }
 
-    public void setFileName(String newFileName) {
-        this.fileName = newFileName;
-    }
-
     @Override
     public String toString() {
         StringBuilder buffer = new StringBuilder();
@@ -58,4 +54,3 @@ public class RubyName {
         return buffer.toString();
     }
 }
-
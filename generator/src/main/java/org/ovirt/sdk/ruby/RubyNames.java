@@ -19,9 +19,15 @@ package org.ovirt.sdk.ruby;
 import static java.util.stream.Collectors.joining;
 
 import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
 import javax.enterprise.context.ApplicationScoped;
 import javax.inject.Inject;
 
@@ -34,6 +40,14 @@ import org.ovirt.api.metamodel.tool.Words;
 
 /**
  * This class contains the rules used to calculate the names of generated Java concepts.
+ *
+ * The module name and the version are configured by the tool before running the generators, and after that the object
+ * is only read, so it can be safely used by generators running in different threads.
+ *
+ * The calculated names are memoized, as the same names are requested many times by the different generators. The
+ * names of types and services are cached by the identity of the model object, and the rest by the words of the name.
+ * The number of cache hits and misses can be obtained with the {@link #getCacheHits()} and {@link #getCacheMisses()}
+ * methods.
  */
 @ApplicationScoped
 public class RubyNames {
@@ -67,6 +81,33 @@ public class RubyNames {
     // The version of the gem:
     private String version;
 
+    // The caches of names of types and services, indexed by the model object:
+    private final Map<Type, RubyName> typeNames = new ConcurrentHashMap<>();
+    private final Map<Type, RubyName> readerNames = new ConcurrentHashMap<>();
+    private final Map<Type, RubyName> writerNames = new ConcurrentHashMap<>();
+    private final Map<Service, RubyName> serviceNames = new ConcurrentHashMap<>();
+
+    // The caches of names built from other names, indexed by the base name, the suffix and the directory:
+    private final Map<NameKey, RubyName> builtNames = new ConcurrentHashMap<>();
+
+    // The caches of the different styles of names:
+    private final Map<Name, String> classStyleNames = new ConcurrentHashMap<>();
+    private final Map<Name, String> memberStyleNames = new ConcurrentHashMap<>();
+    private final Map<Name, String> constantStyleNames = new ConcurrentHashMap<>();
+    private final Map<Name, String> fileStyleNames = new ConcurrentHashMap<>();
+
+    // The cache statistics:
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    public void setWords(Words newWords) {
+        words = newWords;
+    }
+
+    public void setReservedWords(Set<String> newReservedWords) {
+        reservedWords = newReservedWords;
+    }
+
     /**
      * Get the module name.
      */
@@ -106,6 +147,40 @@ public class RubyNames {
         modulePath = Arrays.stream(moduleName.split("::"))
             .map(String::toLowerCase)
             .collect(joining("/"));
+
+        // The cached names contain the module name and path, so they are no longer valid:
+        clearCache();
+    }
+
+    /**
+     * Returns the number of times that a name was found in the cache.
+     */
+    public long getCacheHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of times that a name wasn't found in the cache and had to be calculated.
+     */
+    public long getCacheMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Removes all the cached names and resets the statistics.
+     */
+    public void clearCache() {
+        typeNames.clear();
+        readerNames.clear();
+        writerNames.clear();
+        serviceNames.clear();
+        builtNames.clear();
+        classStyleNames.clear();
+        memberStyleNames.clear();
+        constantStyleNames.clear();
+        fileStyleNames.clear();
+        hits.reset();
+        misses.reset();
     }
 
     /**
@@ -126,7 +201,7 @@ public class RubyNames {
      * Calculates the Ruby name that corresponds to the given type.
      */
     public RubyName getTypeName(Type type) {
-        return buildName(type.getName(), null, TYPES_DIR);
+        return lookup(typeNames, type, x -> buildName(x.getName(), null, TYPES_DIR));
     }
 
     /**
@@ -140,7 +215,7 @@ public class RubyNames {
      * Calculates the Ruby name that corresponds to the given service.
      */
     public RubyName getServiceName(Service service) {
-        return buildName(service.getName(), SERVICE_NAME, SERVICES_DIR);
+        return lookup(serviceNames, service, x -> buildName(x.getName(), SERVICE_NAME, SERVICES_DIR));
     }
 
     /**
@@ -161,14 +236,14 @@ public class RubyNames {
      * Calculates the Ruby name of the reader for the given type.
      */
     public RubyName getReaderName(Type type) {
-        return buildName(type.getName(), READER_NAME, READERS_DIR);
+        return lookup(readerNames, type, x -> buildName(x.getName(), READER_NAME, READERS_DIR));
     }
 
     /**
      * Calculates the Ruby name of the writer for the given type.
      */
     public RubyName getWriterName(Type type) {
-        return buildName(type.getName(), WRITER_NAME, WRITERS_DIR);
+        return lookup(writerNames, type, x -> buildName(x.getName(), WRITER_NAME, WRITERS_DIR));
     }
 
     /**
@@ -213,17 +288,19 @@ public class RubyNames {
      * @return the calculated Ruby name
      */
     private RubyName buildName(Name base, Name suffix, Name directory) {
-        // Calculate class name:
-        List<String> words = base.getWords();
+        NameKey key = new NameKey(base, suffix, directory);
+        return lookup(builtNames, key, x -> calculateName(x.base, x.suffix, x.directory));
+    }
+
+    private RubyName calculateName(Name base, Name suffix, Name directory) {
+        // Calculate class name. Note that the list of words is copied, so that the name of the model concept isn't
+        // modified when the words of the suffix are added:
+        List<String> words = new ArrayList<>(base.getWords());
         if (suffix != null) {
             words.addAll(suffix.getWords());
         }
         Name name = new Name(words);
-        RubyName result = new RubyName();
-        result.setClassName(getClassStyleName(name));
-
-        // Calculate the module name:
-        result.setModuleName(moduleName);
+        String className = calculateClassStyleName(name);
 
         // Calculate the file name:
         StringBuilder fileName = new StringBuilder();
@@ -233,16 +310,19 @@ public class RubyNames {
             fileName.append(getFileStyleName(directory));
             fileName.append(File.separator);
         }
-        fileName.append(getFileStyleName(name));
-        result.setFileName(fileName.toString());
+        fileName.append(calculateFileStyleName(name));
 
-        return result;
+        return new RubyName(moduleName, className, fileName.toString());
     }
 
     /**
      * Returns a representation of the given name using the capitalization style typically used for Ruby classes.
      */
     public String getClassStyleName(Name name) {
+        return lookupName(classStyleNames, name, this::calculateClassStyleName);
+    }
+
+    private String calculateClassStyleName(Name name) {
         return name.words().map(words::capitalize).collect(joining());
     }
 
@@ -250,6 +330,10 @@ public class RubyNames {
      * Returns a representation of the given name using the capitalization style typically used for Ruby members.
      */
     public String getMemberStyleName(Name name) {
+        return lookupName(memberStyleNames, name, this::calculateMemberStyleName);
+    }
+
+    private String calculateMemberStyleName(Name name) {
         String result = name.words().map(String::toLowerCase).collect(joining("_"));
         if (reservedWords.contains(result)) {
             result += "_";
@@ -261,6 +345,10 @@ public class RubyNames {
      * Returns a representation of the given name using the capitalization style typically used for Ruby constants.
      */
     public String getConstantStyleName(Name name) {
+        return lookupName(constantStyleNames, name, this::calculateConstantStyleName);
+    }
+
+    private String calculateConstantStyleName(Name name) {
         return name.words().map(String::toUpperCase).collect(joining("_"));
     }
 
@@ -268,7 +356,83 @@ public class RubyNames {
      * Returns a representation of the given name using the capitalization style typically used for Ruby files.
      */
     public String getFileStyleName(Name name) {
+        return lookupName(fileStyleNames, name, this::calculateFileStyleName);
+    }
+
+    private String calculateFileStyleName(Name name) {
         return name.words().map(String::toLowerCase).collect(joining("_"));
     }
-}
 
+    /**
+     * Finds a value in the given cache, calculating and adding it if it isn't there yet. Note that the value may be
+     * calculated more than once if several threads request it at the same time, but all of them will get the same
+     * result, as the calculations don't have side effects.
+     */
+    private <K, V> V lookup(Map<K, V> cache, K key, Function<K, V> calculator) {
+        V value = cache.get(key);
+        if (value != null) {
+            hits.increment();
+            return value;
+        }
+        misses.increment();
+        value = calculator.apply(key);
+        V existing = cache.putIfAbsent(key, value);
+        return existing != null? existing: value;
+    }
+
+    /**
+     * Finds a value in a cache indexed by name. Names are mutable, so the key stored in the cache is a copy of the
+     * given name, to make sure that it doesn't change if the caller later modifies the original.
+     */
+    private <V> V lookupName(Map<Name, V> cache, Name name, Function<Name, V> calculator) {
+        V value = cache.get(name);
+        if (value != null) {
+            hits.increment();
+            return value;
+        }
+        misses.increment();
+        value = calculator.apply(name);
+        V existing = cache.putIfAbsent(copyName(name), value);
+        return existing != null? existing: value;
+    }
+
+    private static Name copyName(Name name) {
+        return name != null? new Name(new ArrayList<>(name.getWords())): null;
+    }
+
+    /**
+     * The key used to cache the names built from a base name, an optional suffix and an optional directory.
+     */
+    private static final class NameKey {
+        private final Name base;
+        private final Name suffix;
+        private final Name directory;
+        private final int hash;
+
+        NameKey(Name base, Name suffix, Name directory) {
+            this.base = copyName(base);
+            this.suffix = suffix;
+            this.directory = directory;
+            this.hash = Objects.hash(this.base, suffix, directory);
+        }
+
+        @Override
+        public boolean equals(Object object) {
+            if (this == object) {
+                return true;
+            }
+            if (!(object instanceof NameKey)) {
+                return false;
+            }
+            NameKey that = (NameKey) object;
+            return Objects.equals(base, that.base) &&
+                Objects.equals(suffix, that.suffix) &&
+                Objects.equals(directory, that.directory);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -33,7 +33,7 @@ public class RubyReservedWords {
     private Set<String> words;
 
     @PostConstruct
-    private void init() {
+    void init() {
         // Create the set:
         words = new HashSet<>();
 
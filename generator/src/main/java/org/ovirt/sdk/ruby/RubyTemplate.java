@@ -0,0 +1,164 @@
+/*
+Copyright (c) 2016 Red Hat, Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+package org.ovirt.sdk.ruby;
+
+import java.util.ArrayList;
+import java.util.Formattable;
+import java.util.Formatter;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class is a precompiled version of a format string, as used by the {@link String#format(String, Object...)}
+ * method. The generators use the same format strings many times, so instead of parsing them again every time they are
+ * parsed once and the result is cached. The cache is bounded: when it is full it is emptied, and the format strings
+ * that are still in use are compiled again.
+ *
+ * Only the subset of the syntax used by the generators is compiled: the {@code %s} conversion, with or without
+ * explicit argument indexes, like {@code %1$s}, and the {@code %%} and {@code %n} escapes. Format strings that use
+ * anything else, for example widths, flags or the {@code %d} conversion, whose result depends on the locale, and
+ * arguments that implement {@link Formattable}, are handled by the {@link Formatter} class, so the result is always
+ * the same that {@link String#format(String, Object...)} would return.
+ */
+public class RubyTemplate {
+    // The maximum number of templates kept in the cache. The generators use a few hundred different format strings,
+    // so this is only reached if format strings are created dynamically:
+    private static final int CACHE_SIZE = 2048;
+
+    // The cache of compiled templates, indexed by format string:
+    private static final Map<String, RubyTemplate> CACHE = new ConcurrentHashMap<>();
+
+    // The format string:
+    private final String format;
+
+    // The literal parts of the template. The part with index i is added before the argument with index i, and the
+    // last part after the last argument:
+    private final String[] literals;
+
+    // The indexes of the arguments, starting with zero:
+    private final int[] indexes;
+
+    // Indicates if the format string uses syntax that isn't supported, so that the formatter has to be used:
+    private final boolean fallback;
+
+    /**
+     * Returns the compiled template for the given format string, compiling it if it isn't already in the cache.
+     */
+    public static RubyTemplate compile(String format) {
+        RubyTemplate template = CACHE.get(format);
+        if (template == null) {
+            template = new RubyTemplate(format);
+            if (CACHE.size() >= CACHE_SIZE) {
+                CACHE.clear();
+            }
+            CACHE.put(format, template);
+        }
+        return template;
+    }
+
+    private RubyTemplate(String format) {
+        this.format = format;
+
+        List<String> literalsList = new ArrayList<>();
+        List<Integer> indexesList = new ArrayList<>();
+        boolean unsupported = false;
+        StringBuilder literal = new StringBuilder();
+        int ordinary = 0;
+        int length = format.length();
+        int i = 0;
+        while (i < length && !unsupported) {
+            char c = format.charAt(i);
+            if (c != '%') {
+                literal.append(c);
+                i++;
+                continue;
+            }
+
+            // Parse the optional explicit index, which is a sequence of digits followed by a dollar sign:
+            int j = i + 1;
+            int explicit = 0;
+            while (j < length && Character.isDigit(format.charAt(j))) {
+                explicit = explicit * 10 + (format.charAt(j) - '0');
+                j++;
+            }
+            if (j > i + 1) {
+                if (j >= length || format.charAt(j) != '$' || explicit == 0) {
+                    unsupported = true;
+                    break;
+                }
+                j++;
+            }
+            if (j >= length) {
+                unsupported = true;
+                break;
+            }
+
+            // Parse the conversion:
+            char conversion = format.charAt(j);
+            boolean hasIndex = j > i + 1;
+            if ((conversion == '%' || conversion == 'n') && !hasIndex) {
+                literal.append(conversion == '%'? "%": System.lineSeparator());
+            }
+            else if (conversion == 's') {
+                literalsList.add(literal.toString());
+                literal.setLength(0);
+                indexesList.add(hasIndex? explicit - 1: ordinary++);
+            }
+            else {
+                unsupported = true;
+            }
+            i = j + 1;
+        }
+        literalsList.add(literal.toString());
+
+        fallback = unsupported;
+        literals = literalsList.toArray(new String[literalsList.size()]);
+        indexes = new int[indexesList.size()];
+        for (int k = 0; k < indexes.length; k++) {
+            indexes[k] = indexesList.get(k);
+        }
+    }
+
+    /**
+     * Formats the given arguments using this template, and appends the result to the given buffer.
+     */
+    public void format(StringBuilder buffer, Object... args) {
+        if (fallback || !isSupported(args)) {
+            new Formatter(buffer).format(format, args);
+            return;
+        }
+        for (int i = 0; i < indexes.length; i++) {
+            buffer.append(literals[i]);
+            buffer.append(args[indexes[i]]);
+        }
+        buffer.append(literals[indexes.length]);
+    }
+
+    /**
+     * Checks that the given arguments can be formatted without the formatter. There must be enough arguments, and they
+     * can't implement the {@link Formattable} interface.
+     */
+    private boolean isSupported(Object[] args) {
+        for (int index : indexes) {
+            if (args == null || index >= args.length || args[index] instanceof Formattable) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -17,17 +17,14 @@ limitations under the License.
 package org.ovirt.sdk.ruby;
 
 import static java.util.stream.Collectors.joining;
-import static java.util.stream.Collectors.toCollection;
 import static java.util.stream.Collectors.toList;
 
 import java.io.File;
-import java.io.IOException;
-import java.util.ArrayDeque;
-import java.util.Deque;
+import java.util.ArrayList;
 import java.util.List;
 import java.util.Optional;
-import javax.enterprise.inject.spi.CDI;
 import javax.inject.Inject;
+import javax.inject.Provider;
 
 import org.ovirt.api.metamodel.concepts.ListType;
 import org.ovirt.api.metamodel.concepts.Locator;
@@ -40,7 +37,6 @@ import org.ovirt.api.metamodel.concepts.PrimitiveType;
 import org.ovirt.api.metamodel.concepts.Service;
 import org.ovirt.api.metamodel.concepts.StructType;
 import org.ovirt.api.metamodel.concepts.Type;
-import org.ovirt.api.metamodel.tool.SchemaNames;
 
 /**
  * This class is responsible for generating the classes that represent the services of the model.
@@ -58,11 +54,20 @@ public class ServicesGenerator implements RubyGenerator {
 
     // Reference to the objects used to generate the code:
     @Inject private RubyNames rubyNames;
-    @Inject private SchemaNames schemaNames;
+    @Inject private YardDoc yardDoc;
+    @Inject private ModelIndexer modelIndexer;
+    @Inject private GeneratorOptions options;
 
-    // The buffer used to generate the Ruby code:
+    // The index of the model that is being generated:
+    private ModelIndex index;
+
+    // The provider of the buffers used to generate the Ruby code, and the buffer currently in use:
+    @Inject private Provider<RubyBuffer> bufferProvider;
     private RubyBuffer buffer;
 
+    // Reference to the object used to write the files:
+    @Inject private RubyFiles rubyFiles;
+
     /**
      * Set the directory were the output will be generated.
      */
@@ -70,22 +75,76 @@ public class ServicesGenerator implements RubyGenerator {
         out = newOut;
     }
 
+    public void setRubyNames(RubyNames newRubyNames) {
+        rubyNames = newRubyNames;
+    }
+
+    public void setYardDoc(YardDoc newYardDoc) {
+        yardDoc = newYardDoc;
+    }
+
+    public void setModelIndexer(ModelIndexer newModelIndexer) {
+        modelIndexer = newModelIndexer;
+    }
+
+    public void setOptions(GeneratorOptions newOptions) {
+        options = newOptions;
+    }
+
+    public void setBufferProvider(Provider<RubyBuffer> newBufferProvider) {
+        bufferProvider = newBufferProvider;
+    }
+
+    public void setRubyFiles(RubyFiles newRubyFiles) {
+        rubyFiles = newRubyFiles;
+    }
+
+    @Override
+    public boolean isDocumented() {
+        return true;
+    }
+
     public void generate(Model model) {
+        index = modelIndexer.getIndex(model);
+        if (options.isSplit()) {
+            generateSplit();
+        }
+        else {
+            generateMonolithic(model);
+        }
+    }
+
+    private void generateMonolithic(Model model) {
         // Calculate the file name:
         String fileName = rubyNames.getModulePath() + "/services";
-        buffer = CDI.current().select(RubyBuffer.class).get();
+        buffer = bufferProvider.get();
         buffer.setFileName(fileName);
 
         // Generate the source:
         generateSource(model);
 
         // Write the file:
-        try {
-            buffer.write(out);
-        }
-        catch (IOException exception) {
-            throw new IllegalStateException("Error writing services file \"" + fileName + "\"", exception);
-        }
+        rubyFiles.write(buffer, out);
+    }
+
+    private void generateSplit() {
+        // Generate a file for each service:
+        List<RubyName> names = new ArrayList<>();
+        index.getServices().forEach(service -> {
+            RubyName name = rubyNames.getServiceName(service);
+            generateClassFile(name, () -> generateService(service));
+            names.add(name);
+        });
+
+        // Generate the index file, containing only the declarations that load the services on demand:
+        rubyFiles.writeIndexFile(out, rubyNames.getModulePath() + "/services", names);
+    }
+
+    private void generateClassFile(RubyName name, Runnable generator) {
+        rubyFiles.writeClassFile(out, name, classBuffer -> {
+            buffer = classBuffer;
+            generator.run();
+        });
     }
 
     private void generateSource(Model model) {
@@ -98,22 +157,13 @@ public class ServicesGenerator implements RubyGenerator {
         buffer.addLine();
 
         // The declarations of the services need to appear in inheritance order, otherwise some symbols won't be
-        // defined and that will produce errors. To order them correctly we need first to sort them by name, and
-        // then sort again so that bases are before extensions.
-        Deque<Service> pending = model.services()
-            .sorted()
-            .collect(toCollection(ArrayDeque::new));
-        Deque<Service> sorted = new ArrayDeque<>(pending.size());
-        while (!pending.isEmpty()) {
-            Service current = pending.removeFirst();
-            Service base = current.getBase();
-            if (base == null || sorted.contains(base)) {
-                sorted.addLast(current);
-            }
-            else {
-                pending.addLast(current);
-            }
-        }
+        // defined and that will produce errors. The index already sorts them by name, so we only need to sort
+        // them again so that bases are before extensions.
+        TopologicalSorter<Service> sorter = new TopologicalSorter<>(
+            Service::getBase,
+            service -> service.getName().toString()
+        );
+        List<Service> sorted = sorter.sort(index.getServices());
 
         // Generate the forward declarations using the order calculated in the previous step:
         sorted.forEach(x -> {
@@ -146,6 +196,7 @@ public class ServicesGenerator implements RubyGenerator {
         buffer.addComment();
         buffer.addYardTag("api", "private");
         buffer.addComment();
+        ModelIndex.ServiceIndex serviceIndex = index.getService(service);
         buffer.addLine("def initialize(connection, path)");
         buffer.addLine(  "@connection = connection");
         buffer.addLine(  "@path = path");
@@ -153,9 +204,9 @@ public class ServicesGenerator implements RubyGenerator {
         buffer.addLine();
 
         // Generate the methods and locators:
-        service.methods().sorted().forEach(this::generateMethod);
-        service.locators().sorted().forEach(this::generateLocator);
-        generatePathLocator(service);
+        serviceIndex.getMethods().forEach(this::generateMethod);
+        serviceIndex.getLocators().forEach(this::generateLocator);
+        generateLocatorTables(service);
 
         // Generate other methods that don't correspond to model methods or locators:
         generateToS(service);
@@ -332,6 +383,11 @@ public class ServicesGenerator implements RubyGenerator {
             buffer.addYardOption(parameter);
             buffer.addComment();
         });
+        generateFieldsOption();
+        boolean list = mainParameter.getType() instanceof ListType;
+        if (list) {
+            generateDedupOption();
+        }
 
         // Document the return value:
         buffer.addYardReturn(mainParameter);
@@ -348,10 +404,72 @@ public class ServicesGenerator implements RubyGenerator {
         buffer.addLine("response = @connection.send(request)");
         buffer.addLine("case response.code");
         buffer.addLine("when 200");
-        generateReturnResponseBody(mainParameter);
+        generateReturnResponseBody(mainParameter, "Reader.parse_fields(opts[:fields])", list? "opts[:dedup]": null);
+        buffer.addLine("else");
+        buffer.addLine(  "check_fault(response)");
+        buffer.addLine("end");
+
+        // End method:
+        buffer.addLine("end");
+        buffer.addLine();
+
+        // Methods that return lists of structs also get a method that yields the objects one at a time:
+        if (LIST.equals(methodName) && mainParameter != null && mainParameter.getType() instanceof ListType) {
+            Type elementType = ((ListType) mainParameter.getType()).getElementType();
+            if (elementType instanceof StructType) {
+                generateHttpGetEach(method, inParameters, elementType);
+            }
+        }
+    }
+
+    private void generateHttpGetEach(Method method, List<Parameter> inParameters, Type elementType) {
+        String methodName = rubyNames.getMemberStyleName(method.getName());
+        String eachName = methodName + "_each";
+
+        // Document the method:
+        buffer.addComment();
+        buffer.addComment("Iterates the objects returned by the `%1$s` method without creating a list containing", methodName);
+        buffer.addComment("all of them. Each object is yielded to the block as soon as it has been read from the");
+        buffer.addComment("response, so only one object is kept in memory at a time. If no block is given it returns");
+        buffer.addComment("a lazy enumerator, and the request is sent when the enumerator is iterated.");
+        buffer.addComment();
+        buffer.addYardTag(
+            "param",
+            "opts [Hash] The same options than the `%1$s` method, including `:fields` and `:dedup`.",
+            methodName
+        );
+        buffer.addComment();
+        buffer.addYardTag("yield", "[object] Each object of the result.");
+        buffer.addYardTag("yieldparam", "object [%1$s]", yardDoc.getType(elementType));
+        buffer.addComment();
+        buffer.addYardTag("return", "[Enumerator::Lazy] The lazy enumerator, if no block is given.");
+        buffer.addComment();
+
+        // Generate the method declaration:
+        buffer.addLine("def %1$s(opts = {})", eachName);
+
+        // Generate the method body:
+        RubyName reader = rubyNames.getReaderName(elementType);
+        buffer.addLine("return enum_for(:%1$s, opts).lazy unless block_given?", eachName);
+        buffer.addLine("query = {}");
+        inParameters.forEach(this::generateUrlParameter);
+        buffer.addLine("request = HttpRequest.new(:method => :GET, :url => @path, :query => query)");
+        buffer.addLine("response = @connection.send(request)");
+        buffer.addLine("case response.code");
+        buffer.addLine("when 200");
+        buffer.addLine(  "begin");
+        buffer.addLine(    "reader = XmlReader.new(response.body, opts[:dedup])");
+        buffer.addLine(
+            "%1$s.read_each(reader, Reader.parse_fields(opts[:fields])) { |object| yield object }",
+            reader.getClassName()
+        );
+        buffer.addLine(  "ensure");
+        buffer.addLine(    "reader.close");
+        buffer.addLine(  "end");
         buffer.addLine("else");
         buffer.addLine(  "check_fault(response)");
         buffer.addLine("end");
+        buffer.addLine("return nil");
 
         // End method:
         buffer.addLine("end");
@@ -459,19 +577,58 @@ public class ServicesGenerator implements RubyGenerator {
         buffer.addLine("end");
     }
 
+    private void generateFieldsOption() {
+        buffer.addYardTag(
+            "option",
+            "opts [Array<Symbol, String>] :fields The names of the attributes that will be read from the response,\n" +
+            "for example `[:id, :name, 'host.name']`. Nested attributes are selected with paths separated by dots.\n" +
+            "The rest of the attributes are skipped without creating the objects. By default all the attributes\n" +
+            "are read."
+        );
+        buffer.addComment();
+    }
+
+    private void generateDedupOption() {
+        buffer.addYardTag(
+            "option",
+            "opts [Boolean] :dedup If `true` the values of the XML attributes of the response, like the `href` and\n" +
+            "`id` of the referenced clusters or hosts, are created only once, and shared as frozen strings by all\n" +
+            "the objects of the result. This reduces the memory used by large lists. By default it is `false`."
+        );
+        buffer.addComment();
+    }
+
     private void generateReturnResponseBody(Parameter parameter) {
+        generateReturnResponseBody(parameter, null, null);
+    }
+
+    /**
+     * Generates the code that reads the response body.
+     *
+     * @param fields the Ruby expression that calculates the selection of fields to read, or {@code null} if all the
+     *     fields should be read
+     * @param dedup the Ruby expression that indicates if repeated attribute values should be shared, or {@code null}
+     *     if they shouldn't
+     */
+    private void generateReturnResponseBody(Parameter parameter, String fields, String dedup) {
         Type type = parameter.getType();
+        String arguments = fields != null? "reader, " + fields: "reader";
         buffer.addLine("begin");
-        buffer.addLine(  "reader = XmlReader.new(response.body)");
+        if (dedup != null) {
+            buffer.addLine("reader = XmlReader.new(response.body, %1$s)", dedup);
+        }
+        else {
+            buffer.addLine("reader = XmlReader.new(response.body)");
+        }
         if (type instanceof StructType) {
             RubyName reader = rubyNames.getReaderName(type);
-            buffer.addLine("return %1$s.read_one(reader)", reader.getClassName());
+            buffer.addLine("return %1$s.read_one(%2$s)", reader.getClassName(), arguments);
         }
         else if (type instanceof ListType) {
             ListType listType = (ListType) type;
             Type elementType = listType.getElementType();
             RubyName reader = rubyNames.getReaderName(elementType);
-            buffer.addLine("return %1$s.read_many(reader)", reader.getClassName());
+            buffer.addLine("return %1$s.read_many(%2$s)", reader.getClassName(), arguments);
         }
         buffer.addLine("ensure");
         buffer.addLine(  "reader.close");
@@ -519,7 +676,7 @@ public class ServicesGenerator implements RubyGenerator {
         Type type = parameter.getType();
         Name name = parameter.getName();
         String symbol = rubyNames.getMemberStyleName(name);
-        String tag = schemaNames.getSchemaTagName(name);
+        String tag = modelIndexer.getTagName(name);
         buffer.addLine("value = opts[:%1$s]", symbol);
         buffer.addLine("unless value.nil?");
         if (type instanceof PrimitiveType) {
@@ -581,7 +738,12 @@ public class ServicesGenerator implements RubyGenerator {
         buffer.addYardTag("return", "[%1$s] A reference to the `%2$s` service.", serviceName.getClassName(), methodName);
         buffer.addComment();
         buffer.addLine("def %1$s_service(%2$s)", methodName, argName);
-        buffer.addLine(  "return %1$s.new(@connection, \"#{@path}/#{%2$s}\")", serviceName.getClassName(), argName);
+        buffer.addLine(
+            "return (@%1$s ||= ServiceCache.new).fetch(%2$s) { %3$s.new(@connection, \"#{@path}/#{%2$s}\") }",
+            getCacheName(locator),
+            argName,
+            serviceName.getClassName()
+        );
         buffer.addLine("end");
         buffer.addLine();
     }
@@ -599,62 +761,58 @@ public class ServicesGenerator implements RubyGenerator {
         buffer.addComment();
         buffer.addYardTag("return", "[%1$s] A reference to `%2$s` service.", serviceName.getClassName(), methodName);
         buffer.addLine("def %1$s_service", methodName);
-        buffer.addLine(  "return %1$s.new(@connection, \"#{@path}/%2$s\")", serviceName.getClassName(), urlSegment);
+        buffer.addLine(
+            "return @%1$s_service ||= %2$s.new(@connection, \"#{@path}/%3$s\")",
+            methodName,
+            serviceName.getClassName(),
+            urlSegment
+        );
         buffer.addLine("end");
         buffer.addLine();
     }
 
-    private void generatePathLocator(Service service) {
-        // Begin method:
-        buffer.addComment();
-        buffer.addComment("Locates the service corresponding to the given path.");
+    private void generateLocatorTables(Service service) {
+        // Generate the table that maps the segments of the path to the services located without parameters. The
+        // values are the names of the classes, so that they don't need to be loaded till they are used:
         buffer.addComment();
-        buffer.addYardTag("param", "path [String] The path of the service.");
+        buffer.addComment("The names of the classes of the services that correspond to the segments of a path, indexed");
+        buffer.addComment("by segment. Used by the {Service#service} method to walk the path.");
         buffer.addComment();
-        buffer.addYardTag("return", "[Service] A reference to the service.");
+        buffer.addYardTag("api", "private");
         buffer.addComment();
-        buffer.addLine("def service(path)");
-        buffer.addLine(  "if path.nil? || path == ''");
-        buffer.addLine(    "return self");
-        buffer.addLine(  "end");
-
-        // Generate the code that checks if the path corresponds to any of the locators without parameters:
-        service.locators().filter(x -> x.getParameters().isEmpty()).sorted().forEach(locator -> {
-            Name name = locator.getName();
-            String segment = getPath(name);
-            buffer.addLine("if path == '%1$s'", segment);
-            buffer.addLine(  "return %1$s_service", rubyNames.getMemberStyleName(name));
-            buffer.addLine("end");
-            buffer.addLine("if path.start_with?('%1$s/')", segment);
-            buffer.addLine(
-                "return %1$s_service.service(path[%2$d..-1])",
-                rubyNames.getMemberStyleName(name),
-                segment.length() + 1
-            );
-            buffer.addLine("end");
-        });
+        List<Locator> locators = index.getService(service).getLocators().stream()
+            .filter(x -> x.getParameters().isEmpty())
+            .collect(toList());
+        if (locators.isEmpty()) {
+            buffer.addLine("LOCATORS = {}.freeze");
+        }
+        else {
+            buffer.addLine("LOCATORS = {");
+            locators.forEach(locator -> {
+                RubyName serviceName = rubyNames.getServiceName(locator.getService());
+                buffer.addLine("'%1$s' => :%2$s,", getPath(locator.getName()), serviceName.getClassName());
+            });
+            buffer.addLine("}.freeze");
+        }
+        buffer.addLine();
 
-        // If the path doesn't correspond to a locator without parameters, then it will correspond to the locator
-        // with parameters, otherwise it is an error:
+        // The segments that don't correspond to a locator without parameters correspond to the locator with
+        // parameters, if there is any, otherwise they are an error:
+        buffer.addComment();
+        buffer.addComment("The name of the class of the service that corresponds to the segments that aren't in the");
+        buffer.addComment("`LOCATORS` table, usually the identifiers of the objects of a collection, or `nil` if there");
+        buffer.addComment("is no such service.");
+        buffer.addComment();
+        buffer.addYardTag("api", "private");
+        buffer.addComment();
         Optional<Locator> optional = service.locators().filter(x -> !x.getParameters().isEmpty()).findAny();
         if (optional.isPresent()) {
-            Locator locator = optional.get();
-            Name name = locator.getName();
-            buffer.addLine("index = path.index('/')");
-            buffer.addLine("if index.nil?");
-            buffer.addLine(  "return %1$s_service(path)", rubyNames.getMemberStyleName(name));
-            buffer.addLine("end");
-            buffer.addLine(
-                "return %1$s_service(path[0..(index - 1)]).service(path[(index +1)..-1])",
-                rubyNames.getMemberStyleName(name)
-            );
+            RubyName serviceName = rubyNames.getServiceName(optional.get().getService());
+            buffer.addLine("DEFAULT_LOCATOR = :%1$s", serviceName.getClassName());
         }
         else {
-            buffer.addLine("raise Error.new(\"The path \\\"#{path}\\\" doesn't correspond to any service\")");
+            buffer.addLine("DEFAULT_LOCATOR = nil");
         }
-
-        // End method:
-        buffer.addLine("end");
         buffer.addLine();
     }
 
@@ -665,6 +823,14 @@ public class ServicesGenerator implements RubyGenerator {
         buffer.addLine("class %1$s < %2$s", serviceName.getClassName(), baseName.getClassName());
     }
 
+    /**
+     * Returns the name of the instance variable that contains the cache of the services returned by the given locator
+     * with parameters, for example {@code vm_services} for the {@code vm} locator.
+     */
+    private String getCacheName(Locator locator) {
+        return rubyNames.getMemberStyleName(locator.getName()) + "_services";
+    }
+
     private String getPath(Name name) {
         return name.words().map(String::toLowerCase).collect(joining());
     }
@@ -16,7 +16,20 @@ limitations under the License.
 
 package org.ovirt.sdk.ruby;
 
+import static java.util.stream.Collectors.toList;
+
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import javax.enterprise.context.ApplicationScoped;
 import javax.enterprise.inject.Any;
 import javax.enterprise.inject.Instance;
@@ -40,17 +53,91 @@ public class Tool {
     private static final String MODEL_OPTION = "model";
     private static final String OUT_OPTION = "out";
     private static final String VERSION_OPTION = "version";
+    private static final String THREADS_OPTION = "threads";
+    private static final String STREAMING_OPTION = "streaming";
+    private static final String SPLIT_OPTION = "split";
+    private static final String LAZY_OPTION = "lazy";
+    private static final String FAST_STRUCTS_OPTION = "fast-structs";
+    private static final String SPARSE_OPTION = "sparse";
+    private static final String PROFILE_OPTION = "profile";
+    private static final String DOCS_OPTION = "docs";
+    private static final String EXT_OPTION = "ext";
+    private static final String NATIVE_READERS_OPTION = "native-readers";
+    private static final String MODEL_CACHE_OPTION = "model-cache";
+    private static final String CHECK_MODEL_CACHE_OPTION = "check-model-cache";
+    private static final String METRICS_OPTION = "metrics";
+    private static final String WATCH_OPTION = "watch";
+
+    // The names of the output profiles:
+    private static final String FULL_PROFILE = "full";
+    private static final String LEAN_PROFILE = "lean";
 
     // Reference to the objects used to calculate Ruby names:
     @Inject private RubyNames rubyNames;
 
+    // Reference to the options that control the generators:
+    @Inject private GeneratorOptions generatorOptions;
+
+    // Reference to the object that tracks the generated files:
+    @Inject private OutputManifest manifest;
+
     // References to the generators:
-    @Inject @Any
-    private Instance<RubyGenerator> generators;
+    private List<RubyGenerator> generators;
 
     // Reference to the object used to add built-in types to the model:
     @Inject private BuiltinTypes builtinTypes;
 
+    // Reference to the cache of analyzed models:
+    @Inject private ModelCache modelCache;
+
+    // Reference to the object that collects the metrics of the run:
+    @Inject private GeneratorMetrics metrics;
+
+    // Reference to the object that calculates the fingerprints used to detect changes in watch mode:
+    @Inject private ModelFingerprints fingerprints;
+
+    /**
+     * Collects the generators found by the CDI container.
+     */
+    @Inject
+    private void findGenerators(@Any Instance<RubyGenerator> instance) {
+        List<RubyGenerator> found = new ArrayList<>();
+        instance.forEach(found::add);
+        setGenerators(found);
+    }
+
+    public void setRubyNames(RubyNames newRubyNames) {
+        rubyNames = newRubyNames;
+    }
+
+    public void setGeneratorOptions(GeneratorOptions newGeneratorOptions) {
+        generatorOptions = newGeneratorOptions;
+    }
+
+    public void setManifest(OutputManifest newManifest) {
+        manifest = newManifest;
+    }
+
+    public void setGenerators(List<RubyGenerator> newGenerators) {
+        generators = newGenerators;
+    }
+
+    public void setBuiltinTypes(BuiltinTypes newBuiltinTypes) {
+        builtinTypes = newBuiltinTypes;
+    }
+
+    public void setModelCache(ModelCache newModelCache) {
+        modelCache = newModelCache;
+    }
+
+    public void setMetrics(GeneratorMetrics newMetrics) {
+        metrics = newMetrics;
+    }
+
+    public void setFingerprints(ModelFingerprints newFingerprints) {
+        fingerprints = newFingerprints;
+    }
+
     public void run(String[] args) throws Exception {
         // Create the command line options:
         Options options = new Options();
@@ -77,6 +164,27 @@ public class Tool {
             .build()
         );
 
+        // Options to control the cache of analyzed models:
+        options.addOption(Option.builder()
+            .longOpt(MODEL_CACHE_OPTION)
+            .desc("The directory where the results of the analysis of the model will be cached. The cache is only " +
+                "used when this option is given. The directory must belong to the user running the tool, and " +
+                "mustn't be writable by other users.")
+            .type(File.class)
+            .required(false)
+            .hasArg(true)
+            .argName("DIRECTORY")
+            .build()
+        );
+        options.addOption(Option.builder()
+            .longOpt(CHECK_MODEL_CACHE_OPTION)
+            .desc("Check that the model loaded from the cache is equivalent to the result of analyzing the model " +
+                "again, and fail if it isn't. Requires the directory of the cache.")
+            .required(false)
+            .hasArg(false)
+            .build()
+        );
+
         // Option to specify the version number of the gem:
         options.addOption(Option.builder()
             .longOpt(VERSION_OPTION)
@@ -88,6 +196,135 @@ public class Tool {
             .build()
         );
 
+        // Option to specify the number of threads used to run the generators:
+        options.addOption(Option.builder()
+            .longOpt(THREADS_OPTION)
+            .desc("The number of threads used to run the generators. The default is 1, which means that the " +
+                "generators will run sequentially.")
+            .type(Number.class)
+            .required(false)
+            .hasArg(true)
+            .argName("COUNT")
+            .build()
+        );
+
+        // Option to write the generated code directly to the output files, instead of keeping it in memory:
+        options.addOption(Option.builder()
+            .longOpt(STREAMING_OPTION)
+            .desc("Write the generated lines to the output files as they are generated, instead of keeping them in " +
+                "memory till the complete file is generated.")
+            .required(false)
+            .hasArg(false)
+            .build()
+        );
+
+        // Option to generate each class in its own file:
+        options.addOption(Option.builder()
+            .longOpt(SPLIT_OPTION)
+            .desc("Generate each type, service, reader and writer in its own file, and load them on demand using " +
+                "autoload, instead of generating one file containing all the classes of each kind.")
+            .required(false)
+            .hasArg(false)
+            .build()
+        );
+
+        // Option to parse the nested structs and lists only when they are used:
+        options.addOption(Option.builder()
+            .longOpt(LAZY_OPTION)
+            .desc("Generate readers that keep the XML text of the members that are structs or lists of structs, " +
+                "and getters that parse it only when the member is used for the first time.")
+            .required(false)
+            .hasArg(false)
+            .build()
+        );
+
+        // Option to generate faster constructors and getters for the structs:
+        options.addOption(Option.builder()
+            .longOpt(FAST_STRUCTS_OPTION)
+            .desc("Generate the getters of the structs with \"attr_reader\", and constructors that only call the " +
+                "setters of the keys present in the options hash.")
+            .required(false)
+            .hasArg(false)
+            .build()
+        );
+
+        // Option to keep only the members that have a value in the structs:
+        options.addOption(Option.builder()
+            .longOpt(SPARSE_OPTION)
+            .desc("Generate structs that keep the values of their members in a hash containing only the members " +
+                "that aren't nil, instead of in one instance variable per member.")
+            .required(false)
+            .hasArg(false)
+            .build()
+        );
+
+        // Options to select the output profile, and to generate the documented code to a separate directory:
+        options.addOption(Option.builder()
+            .longOpt(PROFILE_OPTION)
+            .desc("The output profile. The default is '" + FULL_PROFILE + "', which generates the code with all " +
+                "the documentation comments. The '" + LEAN_PROFILE + "' profile leaves the documentation comments " +
+                "out, so that the code is faster to load.")
+            .required(false)
+            .hasArg(true)
+            .argName("NAME")
+            .build()
+        );
+        options.addOption(Option.builder()
+            .longOpt(DOCS_OPTION)
+            .desc("The directory where the Ruby source of the types and services will also be generated with all " +
+                "the documentation comments, regardless of the output profile, so that it can be used to generate " +
+                "the documentation.")
+            .type(File.class)
+            .required(false)
+            .hasArg(true)
+            .argName("DIRECTORY")
+            .build()
+        );
+
+        // Options to generate the native readers, and to select the types that have them:
+        options.addOption(Option.builder()
+            .longOpt(EXT_OPTION)
+            .desc("The directory of the C extension, where the source of the native readers will be generated. If " +
+                "no native readers are selected the files generated previously in this directory are removed.")
+            .type(File.class)
+            .required(false)
+            .hasArg(true)
+            .argName("DIRECTORY")
+            .build()
+        );
+        options.addOption(Option.builder()
+            .longOpt(NATIVE_READERS_OPTION)
+            .desc("Comma separated list containing the tags of the types that will have native readers, for " +
+                "example 'vm,host,disk'. The readers of these types will use the native readers when they are " +
+                "available in the C extension. Can't be combined with the lazy readers.")
+            .required(false)
+            .hasArg(true)
+            .argName("TAGS")
+            .build()
+        );
+
+        // Option to write a report containing the time and output of each generator:
+        options.addOption(Option.builder()
+            .longOpt(METRICS_OPTION)
+            .desc("Write to the given file a JSON report containing the time that it took to load the model and to " +
+                "run each generator, and the number of files, lines and bytes written by each generator.")
+            .type(File.class)
+            .required(false)
+            .hasArg(true)
+            .argName("FILE")
+            .build()
+        );
+
+        // Option to keep running, generating the code again when the model changes:
+        options.addOption(Option.builder()
+            .longOpt(WATCH_OPTION)
+            .desc("After generating the code keep watching the model for changes, and when it changes analyze it " +
+                "again and run the generators that are affected by the change. Requires the output directory.")
+            .required(false)
+            .hasArg(false)
+            .build()
+        );
+
         // Parse the command line:
         CommandLineParser parser = new DefaultParser();
         CommandLine line = null;
@@ -104,35 +341,324 @@ public class Tool {
         // Extract the locations of files and directories from the command line:
         File modelFile = (File) line.getParsedOptionValue(MODEL_OPTION);
         File outDir = (File) line.getParsedOptionValue(OUT_OPTION);
+        File docsDir = (File) line.getParsedOptionValue(DOCS_OPTION);
+        File extDir = (File) line.getParsedOptionValue(EXT_OPTION);
+        File metricsFile = (File) line.getParsedOptionValue(METRICS_OPTION);
+        boolean watch = line.hasOption(WATCH_OPTION);
+        if (watch && outDir == null) {
+            throw new IllegalArgumentException("The watch mode requires the output directory");
+        }
+
+        // Check the output profile:
+        String profile = line.getOptionValue(PROFILE_OPTION, FULL_PROFILE);
+        if (!profile.equals(FULL_PROFILE) && !profile.equals(LEAN_PROFILE)) {
+            throw new IllegalArgumentException(
+                "The output profile must be '" + FULL_PROFILE + "' or '" + LEAN_PROFILE + "', but it is '" +
+                profile + "'"
+            );
+        }
+
+        // Extract the tags of the types that have native readers:
+        Set<String> nativeReaders = new HashSet<>();
+        String nativeReadersValue = line.getOptionValue(NATIVE_READERS_OPTION);
+        if (nativeReadersValue != null) {
+            for (String tag : nativeReadersValue.split(",")) {
+                tag = tag.trim();
+                if (!tag.isEmpty()) {
+                    nativeReaders.add(tag);
+                }
+            }
+        }
+        if (!nativeReaders.isEmpty() && line.hasOption(LAZY_OPTION)) {
+            throw new IllegalArgumentException(
+                "The native readers can't be combined with the lazy readers, as they parse all the members"
+            );
+        }
 
         // Extract the version of the:
         String version = line.getOptionValue(VERSION_OPTION);
 
+        // Extract the number of threads:
+        int threads = 1;
+        Number threadsValue = (Number) line.getParsedOptionValue(THREADS_OPTION);
+        if (threadsValue != null) {
+            threads = threadsValue.intValue();
+            if (threads < 1) {
+                throw new IllegalArgumentException(
+                    "The number of threads must be at least 1, but it is " + threads
+                );
+            }
+        }
+
         // The version will usually come from the root POM of the project, where it will use upper case for suffixes
         // like "Alpha" or "Beta". In addition it will have the "-SNAPSHOT" suffix for non release versions. We need
         // to remove the "-SNAPSHOT" suffix, and convert the result to lower case, as the common practice for Ruby
         // is to use "alpha" or "beta", lower case.
         version = version.replaceAll("-SNAPSHOT$", "").toLowerCase();
 
-        // Analyze the model files:
-        Model model = new Model();
-        ModelAnalyzer modelAnalyzer = new ModelAnalyzer();
-        modelAnalyzer.setModel(model);
-        modelAnalyzer.analyzeSource(modelFile);
+        // Extract the location of the model cache:
+        File modelCacheDir = (File) line.getParsedOptionValue(MODEL_CACHE_OPTION);
+        if (modelCacheDir == null && line.hasOption(CHECK_MODEL_CACHE_OPTION)) {
+            throw new IllegalArgumentException("The check of the model cache requires the directory of the cache");
+        }
 
-        // Add the built-in types:
-        builtinTypes.addBuiltinTypes(model);
+        // Try to load the model from the cache, and if that isn't possible analyze the model files, add the built-in
+        // types and save the result to the cache:
+        long modelStart = System.nanoTime();
+        Model model = null;
+        if (modelCacheDir != null) {
+            model = modelCache.load(modelFile, modelCacheDir);
+        }
+        boolean modelCached = model != null;
+        if (model == null) {
+            model = analyzeModel(modelFile);
+            if (modelCacheDir != null) {
+                modelCache.save(model, modelFile, modelCacheDir);
+            }
+        }
+
+        metrics.recordModel(System.nanoTime() - modelStart, modelCached);
+
+        // If requested, check that the cached model is equivalent to the analyzed one. If the model wasn't loaded from
+        // the cache then it has just been saved, so load it to check that it can be read back.
+        if (modelCacheDir != null && line.hasOption(CHECK_MODEL_CACHE_OPTION)) {
+            Model analyzed = modelCached? analyzeModel(modelFile): model;
+            Model cached = modelCached? model: modelCache.load(modelFile, modelCacheDir);
+            if (cached == null || !new ModelSerializer().isEquivalent(analyzed, cached)) {
+                throw new IllegalStateException(
+                    "The model loaded from the cache isn't equivalent to the analyzed model"
+                );
+            }
+            System.out.println("The model loaded from the cache is equivalent to the analyzed model.");
+        }
 
         // Configure the object used to generate names:
         rubyNames.setVersion(version);
 
-        // Run the generators:
+        // Configure the generators:
+        generatorOptions.setStreaming(line.hasOption(STREAMING_OPTION));
+        generatorOptions.setSplit(line.hasOption(SPLIT_OPTION));
+        generatorOptions.setLazy(line.hasOption(LAZY_OPTION));
+        generatorOptions.setFastStructs(line.hasOption(FAST_STRUCTS_OPTION));
+        generatorOptions.setSparse(line.hasOption(SPARSE_OPTION));
+        generatorOptions.setNativeReaders(nativeReaders);
+
+        // Run the generators that write documentation with all the documentation comments for the documentation
+        // directory, if needed, and then all the generators with the selected profile for the output directory:
+        List<RubyGenerator> list = new ArrayList<>(generators);
+        List<RubyGenerator> documented = list.stream()
+            .filter(RubyGenerator::isDocumented)
+            .collect(toList());
+        generatorOptions.setLean(profile.equals(LEAN_PROFILE));
+        generatorOptions.setExtDir(extDir);
+        metrics.reset();
+        if (docsDir != null) {
+            FileUtils.forceMkdir(docsDir);
+            generateDocs(docsDir, documented, model, threads, false);
+        }
         if (outDir != null) {
             FileUtils.forceMkdir(outDir);
-            for (RubyGenerator generator : generators) {
-                generator.setOut(outDir);
-                generator.generate(model);
+            generateOut(outDir, list, model, threads, false);
+        }
+
+        // Write the metrics report:
+        if (metricsFile != null) {
+            metrics.writeReport(metricsFile, model, threads);
+        }
+
+        // Keep generating the code when the model changes:
+        if (watch) {
+            watch(modelFile, outDir, list, docsDir, documented, model, threads);
+        }
+    }
+
+    /**
+     * Analyzes the model files and adds the built-in types.
+     */
+    private Model analyzeModel(File modelFile) throws Exception {
+        Model model = new Model();
+        ModelAnalyzer modelAnalyzer = new ModelAnalyzer();
+        modelAnalyzer.setModel(model);
+        modelAnalyzer.analyzeSource(modelFile);
+        builtinTypes.addBuiltinTypes(model);
+        return model;
+    }
+
+    /**
+     * Runs the given generators for the documentation directory, with all the documentation comments and without the
+     * native readers, and then restores the options of the output profile.
+     */
+    private void generateDocs(File docsDir, List<RubyGenerator> list, Model model, int threads, boolean partial)
+            throws Exception {
+        boolean lean = generatorOptions.isLean();
+        File extDir = generatorOptions.getExtDir();
+        generatorOptions.setLean(false);
+        generatorOptions.setExtDir(null);
+        try {
+            list.forEach(generator -> generator.setOut(docsDir));
+            metrics.setTarget(DOCS_OPTION);
+            generate(docsDir, list, model, threads, partial);
+        }
+        finally {
+            generatorOptions.setLean(lean);
+            generatorOptions.setExtDir(extDir);
+        }
+    }
+
+    /**
+     * Runs the given generators for the output directory, with the options of the output profile.
+     */
+    private void generateOut(File outDir, List<RubyGenerator> list, Model model, int threads, boolean partial)
+            throws Exception {
+        list.forEach(generator -> generator.setOut(outDir));
+        metrics.setTarget(OUT_OPTION);
+        generate(outDir, list, model, threads, partial);
+    }
+
+    /**
+     * Runs the given generators and updates the manifest of the output directory.
+     *
+     * @param partial indicates if the list contains only some of the generators, so that the files generated by the
+     *     rest shouldn't be removed
+     */
+    private void generate(File outDir, List<RubyGenerator> list, Model model, int threads, boolean partial)
+            throws Exception {
+        manifest.load(outDir);
+        if (threads > 1) {
+            runParallel(list, model, threads);
+        }
+        else {
+            runSequential(list, model);
+        }
+        manifest.save(partial);
+        metrics.recordFiles();
+    }
+
+    /**
+     * Watches the model for changes, and when it changes analyzes it again and runs the generators that depend on
+     * the parts of the model that changed, for the documentation directory, if given, and for the output directory.
+     * This never returns, the user is expected to stop the process when no longer needed. Errors analyzing the model
+     * or generating the code are reported, but they don't stop the process, as they are usually fixed by the next
+     * change. Note that the model cache isn't used in this mode, as it would save a copy of the model for each
+     * change.
+     */
+    private void watch(File modelFile, File outDir, List<RubyGenerator> list, File docsDir,
+            List<RubyGenerator> documented, Model model, int threads) throws Exception {
+        Map<ModelPart, String> oldFingerprints = fingerprints.calculate(model);
+        try (ModelWatcher watcher = new ModelWatcher(modelFile)) {
+            System.out.println("Watching model \"" + modelFile.getAbsolutePath() + "\" for changes.");
+            for (;;) {
+                watcher.awaitChange();
+                long start = System.nanoTime();
+
+                // Analyze the model again and find what changed:
+                Model newModel;
+                try {
+                    newModel = analyzeModel(modelFile);
+                }
+                catch (Exception exception) {
+                    System.out.println("Error analyzing the model: " + exception.getMessage());
+                    continue;
+                }
+                Map<ModelPart, String> newFingerprints = fingerprints.calculate(newModel);
+                Set<ModelPart> changed = EnumSet.noneOf(ModelPart.class);
+                for (ModelPart part : ModelPart.values()) {
+                    if (!Objects.equals(oldFingerprints.get(part), newFingerprints.get(part))) {
+                        changed.add(part);
+                    }
+                }
+                oldFingerprints = newFingerprints;
+                if (changed.isEmpty()) {
+                    System.out.println("The model changed, but the changes don't affect the generated code.");
+                    continue;
+                }
+
+                // Select the generators that depend on the changed parts. If all the generators that depend on some
+                // part of the model are selected then also select the rest, so that it is a complete run.
+                List<RubyGenerator> selected = new ArrayList<>();
+                for (RubyGenerator generator : list) {
+                    if (!Collections.disjoint(generator.getDependencies(), changed)) {
+                        selected.add(generator);
+                    }
+                }
+                boolean partial = list.stream()
+                    .anyMatch(x -> !x.getDependencies().isEmpty() && !selected.contains(x));
+                if (!partial) {
+                    selected.clear();
+                    selected.addAll(list);
+                }
+
+                // The names of the types and services are cached using the objects of the model as keys, so the cache
+                // needs to be cleared, otherwise it would keep the objects of the old model:
+                rubyNames.clearCache();
+                metrics.reset();
+                try {
+                    if (docsDir != null) {
+                        List<RubyGenerator> selectedDocs = selected.stream()
+                            .filter(RubyGenerator::isDocumented)
+                            .collect(toList());
+                        if (!selectedDocs.isEmpty()) {
+                            boolean partialDocs = selectedDocs.size() < documented.size();
+                            generateDocs(docsDir, selectedDocs, newModel, threads, partialDocs);
+                        }
+                    }
+                    generateOut(outDir, selected, newModel, threads, partial);
+                }
+                catch (Exception exception) {
+                    System.out.println("Error generating the code: " + exception.getMessage());
+                    continue;
+                }
+                System.out.println(
+                    "Generated the code for changes in " + changed + " in " +
+                    (System.nanoTime() - start) / 1_000_000 + " ms."
+                );
             }
         }
     }
+
+    /**
+     * Runs the given generators one after the other, in the calling thread.
+     */
+    private void runSequential(List<RubyGenerator> list, Model model) throws Exception {
+        for (RubyGenerator generator : list) {
+            metrics.generate(generator, model);
+        }
+    }
+
+    /**
+     * Runs the given generators concurrently, using a fork-join pool with the given number of threads. The generators
+     * only read the model and each of them writes its own files, so the result is exactly the same that would be
+     * generated running them sequentially.
+     */
+    private void runParallel(List<RubyGenerator> list, Model model, int threads) throws Exception {
+        // Note that the generators don't use the name calculators of the metamodel directly, as they aren't
+        // documented as thread safe. All the calls go through the model indexer, which serializes them.
+
+        // Submit a task for each generator, and then wait for all of them to finish:
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try {
+            List<Future<Void>> futures = new ArrayList<>(list.size());
+            for (RubyGenerator generator : list) {
+                futures.add(pool.submit(() -> {
+                    metrics.generate(generator, model);
+                    return null;
+                }));
+            }
+            for (Future<Void> future : futures) {
+                try {
+                    future.get();
+                }
+                catch (ExecutionException exception) {
+                    Throwable cause = exception.getCause();
+                    if (cause instanceof Exception) {
+                        throw (Exception) cause;
+                    }
+                    throw exception;
+                }
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+    }
 }
@@ -0,0 +1,157 @@
+/*
+Copyright (c) 2016 Red Hat, Inc.
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+  http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+*/
+
+
+package org.ovirt.sdk.ruby;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * This class sorts a collection of concepts, like types or services, so that the base of each concept appears before
+ * the concept itself. Generated Ruby classes must be declared in this order, otherwise the base classes wouldn't be
+ * defined yet when the derived ones are declared.
+ *
+ * The order is deterministic: concepts are grouped in levels, and inside each level they keep the order that they
+ * had in the input collection, which is usually the order by name. A concept is in the same level as its base if it
+ * appears after the base in the input, and in the next level otherwise. This is the same order that results from
+ * repeatedly scanning the input and taking the concepts whose bases have already been taken, but it is calculated
+ * with a single pass over the input, visiting each concept a constant number of times.
+ *
+ * @param <T> the type of the concepts to sort
+ */
+public class TopologicalSorter<T> {
+    // Marker for the concepts whose level is being calculated, used to detect cycles:
+    private static final int VISITING = -1;
+
+    // The functions used to get the base of a concept, and to describe a concept in error messages:
+    private final Function<? super T, ? extends T> baseFunction;
+    private final Function<? super T, String> nameFunction;
+
+    /**
+     * Creates a new sorter.
+     *
+     * @param baseFunction the function that returns the base of a concept, or {@code null} if it has no base
+     * @param nameFunction the function that returns the name of a concept, used only in error messages
+     */
+    public TopologicalSorter(Function<? super T, ? extends T> baseFunction, Function<? super T, String> nameFunction) {
+        this.baseFunction = baseFunction;
+        this.nameFunction = nameFunction;
+    }
+
+    /**
+     * Sorts the given concepts so that bases appear before the concepts that extend them.
+     *
+     * @param items the concepts to sort, in the order that should be preserved when there are no dependencies between
+     *     them
+     * @return a new list containing the sorted concepts
+     * @throws IllegalStateException if the bases of the concepts contain a cycle, or if the base of a concept isn't
+     *     part of the collection
+     */
+    public List<T> sort(Collection<? extends T> items) {
+        // Assign to each concept its position in the input:
+        int size = items.size();
+        List<T> input = new ArrayList<>(items);
+        Map<T, Integer> positions = new IdentityHashMap<>(size);
+        for (int i = 0; i < size; i++) {
+            positions.put(input.get(i), i);
+        }
+
+        // Calculate the level of each concept. Levels start with one, and zero means that the level hasn't been
+        // calculated yet. The chain of bases is followed iteratively, so that deep hierarchies don't exhaust the
+        // stack, and each concept is pushed at most once.
+        int[] levels = new int[size];
+        int[] chain = new int[size];
+        int maxLevel = 0;
+        for (int i = 0; i < size; i++) {
+            int depth = 0;
+            int current = i;
+            while (current >= 0 && levels[current] == 0) {
+                levels[current] = VISITING;
+                chain[depth++] = current;
+                current = getBasePosition(input.get(current), positions);
+            }
+            if (current >= 0 && levels[current] == VISITING) {
+                throw new IllegalStateException(describeCycle(input, chain, depth, current));
+            }
+            while (depth > 0) {
+                int derived = chain[--depth];
+                int level;
+                if (current < 0) {
+                    level = 1;
+                }
+                else if (current < derived) {
+                    level = levels[current];
+                }
+                else {
+                    level = levels[current] + 1;
+                }
+                levels[derived] = level;
+                if (level > maxLevel) {
+                    maxLevel = level;
+                }
+                current = derived;
+            }
+        }
+
+        // Distribute the concepts in levels, preserving the input order inside each level:
+        int[] starts = new int[maxLevel + 2];
+        for (int level : levels) {
+            starts[level + 1]++;
+        }
+        for (int level = 1; level <= maxLevel; level++) {
+            starts[level + 1] += starts[level];
+        }
+        List<T> sorted = new ArrayList<>(Collections.nCopies(size, null));
+        for (int i = 0; i < size; i++) {
+            sorted.set(starts[levels[i]]++, input.get(i));
+        }
+        return sorted;
+    }
+
+    private int getBasePosition(T item, Map<T, Integer> positions) {
+        T base = baseFunction.apply(item);
+        if (base == null) {
+            return -1;
+        }
+        Integer position = positions.get(base);
+        if (position == null) {
+            throw new IllegalStateException(
+                "The base \"" + nameFunction.apply(base) + "\" of \"" + nameFunction.apply(item) + "\" isn't " +
+                "part of the set of concepts being sorted"
+            );
+        }
+        return position;
+    }
+
+    private String describeCycle(List<T> input, int[] chain, int depth, int start) {
+        StringBuilder buffer = new StringBuilder("The bases contain a cycle: ");
+        int first = 0;
+        while (chain[first] != start) {
+            first++;
+        }
+        for (int i = first; i < depth; i++) {
+            buffer.append('"').append(nameFunction.apply(input.get(chain[i]))).append("\" -> ");
+        }
+        buffer.append('"').append(nameFunction.apply(input.get(start))).append('"');
+        return buffer.toString();
+    }
+}
@@ -16,16 +16,13 @@ limitations under the License.
 
 package org.ovirt.sdk.ruby;
 
-import static java.util.stream.Collectors.toCollection;
-
 import java.io.File;
-import java.io.IOException;
-import java.util.ArrayDeque;
 import java.util.ArrayList;
-import java.util.Deque;
+import java.util.EnumSet;
 import java.util.List;
-import javax.enterprise.inject.spi.CDI;
+import java.util.Set;
 import javax.inject.Inject;
+import javax.inject.Provider;
 
 import org.ovirt.api.metamodel.concepts.EnumType;
 import org.ovirt.api.metamodel.concepts.EnumValue;
@@ -47,18 +44,71 @@ public class TypesGenerator implements RubyGenerator {
     // Reference to the objects used to generate the code:
     @Inject private RubyNames rubyNames;
     @Inject private YardDoc yardDoc;
+    @Inject private ModelIndexer modelIndexer;
+    @Inject private GeneratorOptions options;
+
+    // The index of the model that is being generated:
+    private ModelIndex index;
 
-    // The buffer used to generate the Ruby code:
+    // The provider of the buffers used to generate the Ruby code, and the buffer currently in use:
+    @Inject private Provider<RubyBuffer> bufferProvider;
     private RubyBuffer buffer;
 
+    // Reference to the object used to write the files:
+    @Inject private RubyFiles rubyFiles;
+
     public void setOut(File newOut) {
         out = newOut;
     }
 
+    public void setRubyNames(RubyNames newRubyNames) {
+        rubyNames = newRubyNames;
+    }
+
+    public void setYardDoc(YardDoc newYardDoc) {
+        yardDoc = newYardDoc;
+    }
+
+    public void setModelIndexer(ModelIndexer newModelIndexer) {
+        modelIndexer = newModelIndexer;
+    }
+
+    public void setOptions(GeneratorOptions newOptions) {
+        options = newOptions;
+    }
+
+    public void setBufferProvider(Provider<RubyBuffer> newBufferProvider) {
+        bufferProvider = newBufferProvider;
+    }
+
+    public void setRubyFiles(RubyFiles newRubyFiles) {
+        rubyFiles = newRubyFiles;
+    }
+
+    @Override
+    public Set<ModelPart> getDependencies() {
+        return EnumSet.of(ModelPart.TYPES);
+    }
+
+    @Override
+    public boolean isDocumented() {
+        return true;
+    }
+
     public void generate(Model model) {
+        index = modelIndexer.getIndex(model);
+        if (options.isSplit()) {
+            generateSplit();
+        }
+        else {
+            generateMonolithic(model);
+        }
+    }
+
+    private void generateMonolithic(Model model) {
         // Calculate the file name:
         String fileName = rubyNames.getModulePath() + "/types";
-        buffer = CDI.current().select(RubyBuffer.class).get();
+        buffer = bufferProvider.get();
         buffer.setFileName(fileName);
 
         // Begin module:
@@ -74,12 +124,32 @@ public class TypesGenerator implements RubyGenerator {
         buffer.addLine();
 
         // Write the file:
-        try {
-            buffer.write(out);
-        }
-        catch (IOException exception) {
-            throw new IllegalStateException("Error writing types file \"" + fileName + "\"", exception);
-        }
+        rubyFiles.write(buffer, out);
+    }
+
+    private void generateSplit() {
+        // Generate a file for each type:
+        List<RubyName> names = new ArrayList<>();
+        index.getStructTypes().forEach(type -> {
+            RubyName name = rubyNames.getTypeName(type);
+            generateClassFile(name, () -> generateStruct(type));
+            names.add(name);
+        });
+        index.getEnumTypes().forEach(type -> {
+            RubyName name = rubyNames.getTypeName(type);
+            generateClassFile(name, () -> generateEnum(type));
+            names.add(name);
+        });
+
+        // Generate the index file, containing only the declarations that load the types on demand:
+        rubyFiles.writeIndexFile(out, rubyNames.getModulePath() + "/types", names);
+    }
+
+    private void generateClassFile(RubyName name, Runnable generator) {
+        rubyFiles.writeClassFile(out, name, classBuffer -> {
+            buffer = classBuffer;
+            generator.run();
+        });
     }
 
     private void generateStructs(Model model) {
@@ -89,24 +159,13 @@ public class TypesGenerator implements RubyGenerator {
         buffer.addComment();
 
         // The declarations of the types need to appear in inheritance order, otherwise some symbols won't be
-        // defined and that will produce errors. To order them correctly we need first to sort them by name, and
-        // then sort again so that bases are before extensions.
-        Deque<StructType> pending = model.types()
-            .filter(StructType.class::isInstance)
-            .map(StructType.class::cast)
-            .sorted()
-            .collect(toCollection(ArrayDeque::new));
-        Deque<StructType> sorted = new ArrayDeque<>(pending.size());
-        while (!pending.isEmpty()) {
-            StructType current = pending.removeFirst();
-            StructType base = (StructType) current.getBase();
-            if (base == null || sorted.contains(base)) {
-                sorted.addLast(current);
-            }
-            else {
-                pending.addLast(current);
-            }
-        }
+        // defined and that will produce errors. The index already sorts them by name, so we only need to sort
+        // them again so that bases are before extensions.
+        TopologicalSorter<StructType> sorter = new TopologicalSorter<>(
+            type -> (StructType) type.getBase(),
+            type -> type.getName().toString()
+        );
+        List<StructType> sorted = sorter.sort(index.getStructTypes());
 
         // Generate the forward declarations using the order calculated in the previous step:
         sorted.forEach(x -> {
@@ -125,10 +184,8 @@ public class TypesGenerator implements RubyGenerator {
         buffer.addLine();
 
         // Attributes and links:
-        List<StructMember> members = new ArrayList<>();
-        members.addAll(type.getAttributes());
-        members.addAll(type.getLinks());
-        members.stream().sorted().forEach(this::generateMember);
+        List<StructMember> members = index.getStruct(type).getMembers();
+        members.forEach(this::generateMember);
 
         // Constructor with a named parameter for each attribute:
         RubyName typeName = rubyNames.getTypeName(type);
@@ -142,7 +199,7 @@ public class TypesGenerator implements RubyGenerator {
             "should be the values of the attributes."
         );
         buffer.addComment();
-        members.stream().sorted().forEach(member -> {
+        members.forEach(member -> {
             Type memberType = member.getType();
             Name memberName = member.getName();
             String docType = yardDoc.getType(memberType);
@@ -161,14 +218,37 @@ public class TypesGenerator implements RubyGenerator {
             }
         });
         buffer.addComment();
-        buffer.addLine("def initialize(opts = {})");
-        buffer.addLine(  "super(opts)");
-        members.stream().sorted().forEach(member -> {
-            String memberName = rubyNames.getMemberStyleName(member.getName());
-            buffer.addLine("self.%1$s = opts[:%1$s]", memberName);
-        });
-        buffer.addLine("end");
-        buffer.addLine();
+        if (options.isFastStructs()) {
+            // The members include the inherited ones, so the constructor doesn't need to call the constructors of the
+            // base classes, but then it needs to handle the 'href' attribute, which is defined in the base struct:
+            buffer.addLine("def initialize(opts = {})");
+            buffer.addLine(  "opts.each do |key, value|");
+            buffer.addLine(    "setter = SETTERS[key]");
+            buffer.addLine(    "send(setter, value) unless setter.nil?");
+            buffer.addLine(  "end");
+            buffer.addLine("end");
+            buffer.addLine();
+
+            // The names of the setters, indexed by the names of the keys of the options hash:
+            buffer.addLine("SETTERS = {");
+            buffer.addLine(  ":href => :href=,");
+            members.forEach(member -> {
+                String memberName = rubyNames.getMemberStyleName(member.getName());
+                buffer.addLine(":%1$s => :%1$s=,", memberName);
+            });
+            buffer.addLine("}.freeze");
+            buffer.addLine();
+        }
+        else {
+            buffer.addLine("def initialize(opts = {})");
+            buffer.addLine(  "super(opts)");
+            members.forEach(member -> {
+                String memberName = rubyNames.getMemberStyleName(member.getName());
+                buffer.addLine("self.%1$s = opts[:%1$s]", memberName);
+            });
+            buffer.addLine("end");
+            buffer.addLine();
+        }
 
         // End class:
         buffer.addLine("end");
@@ -189,12 +269,51 @@ public class TypesGenerator implements RubyGenerator {
         buffer.addComment();
         buffer.addYardTag("return", "[%1$s]", yardDoc.getType(type));
         buffer.addComment();
+        if (options.isFastStructs() && !options.isSparse() && !isLazy(type)) {
+            buffer.addLine("attr_reader :%1$s", property);
+            buffer.addLine();
+            return;
+        }
         buffer.addLine("def %1$s", property);
-        buffer.addLine(  "return @%1$s", property);
+        if (isLazy(type)) {
+            // Parse the XML text stored by the reader, if any, the first time that the member is used:
+            Type elementType = type instanceof ListType? ((ListType) type).getElementType(): type;
+            RubyName readerName = rubyNames.getReaderName(elementType);
+            String method = type instanceof ListType? "read_many": "read_one";
+            buffer.addLine("if @lazy_members && @lazy_members.key?(:%1$s)", property);
+            String load = String.format(
+                "lazy_load(:%1$s) { |reader| %2$s.%3$s(reader) }",
+                property,
+                readerName.getClassName(),
+                method
+            );
+            generateAssignment(property, load);
+            buffer.addLine("end");
+        }
+        if (options.isSparse()) {
+            buffer.addLine("return @values && @values[:%1$s]", property);
+        }
+        else {
+            buffer.addLine("return @%1$s", property);
+        }
         buffer.addLine("end");
         buffer.addLine();
     }
 
+    /**
+     * Checks if the given member type is parsed lazily, which is the case for structs and lists of structs when the
+     * lazy mode is enabled.
+     */
+    private boolean isLazy(Type type) {
+        if (!options.isLazy()) {
+            return false;
+        }
+        if (type instanceof ListType) {
+            type = ((ListType) type).getElementType();
+        }
+        return type instanceof StructType;
+    }
+
     private void generateSetter(StructMember member) {
         Name name = member.getName();
         Type type = member.getType();
@@ -206,7 +325,7 @@ public class TypesGenerator implements RubyGenerator {
             buffer.addYardTag("param", "value [%1$s]", yardDoc.getType(type));
             buffer.addComment();
             buffer.addLine("def %1$s=(value)", property);
-            buffer.addLine(  "@%1$s = value", property);
+            generateAssignment(property, "value");
             buffer.addLine("end");
         }
         else if (type instanceof StructType) {
@@ -218,10 +337,11 @@ public class TypesGenerator implements RubyGenerator {
             buffer.addComment("`opts` parameter to the constructor.");
             buffer.addComment();
             buffer.addLine("def %1$s=(value)", property);
+            generateLazyDiscard(type, property);
             buffer.addLine(  "if value.is_a?(Hash)");
             buffer.addLine(    "value = %1$s.new(value)", typeName.getClassName());
             buffer.addLine(  "end");
-            buffer.addLine(  "@%1$s = value", property);
+            generateAssignment(property, "value");
             buffer.addLine("end");
         }
         else if (type instanceof ListType) {
@@ -230,12 +350,13 @@ public class TypesGenerator implements RubyGenerator {
             Type elementType = listType.getElementType();
             if (elementType instanceof PrimitiveType || elementType instanceof EnumType) {
                 buffer.addLine("def %1$s=(list)", property);
-                buffer.addLine(  "@%1$s = list", property);
+                generateAssignment(property, "list");
                 buffer.addLine("end");
             }
             else if (elementType instanceof StructType) {
                 RubyName elementTypeName = rubyNames.getTypeName(elementType);
                 buffer.addLine("def %1$s=(list)", property);
+                generateLazyDiscard(type, property);
                 buffer.addLine(  "if list.class == Array");
                 buffer.addLine(    "list = List.new(list)");
                 buffer.addLine(    "list.each_with_index do |value, index|");
@@ -244,19 +365,34 @@ public class TypesGenerator implements RubyGenerator {
                 buffer.addLine(      "end");
                 buffer.addLine(    "end");
                 buffer.addLine(  "end");
-                buffer.addLine(  "@%1$s = list", property);
+                generateAssignment(property, "list");
                 buffer.addLine("end");
             }
         }
         buffer.addLine();
     }
 
+    private void generateAssignment(String property, String value) {
+        // In sparse mode the values of the members are kept in a hash that only contains the members that aren't nil,
+        // instead of in one instance variable per member:
+        if (options.isSparse()) {
+            buffer.addLine("store_value(:%1$s, %2$s)", property, value);
+        }
+        else {
+            buffer.addLine("@%1$s = %2$s", property, value);
+        }
+    }
+
+    private void generateLazyDiscard(Type type, String property) {
+        // The XML text stored by the reader must be discarded when the member is explicitly set, otherwise the getter
+        // would replace the new value:
+        if (isLazy(type)) {
+            buffer.addLine("@lazy_members.delete(:%1$s) if @lazy_members", property);
+        }
+    }
+
     private void generateEnums(Model model) {
-        model.types()
-            .filter(EnumType.class::isInstance)
-            .map(EnumType.class::cast)
-            .sorted()
-            .forEach(this::generateEnum);
+        index.getEnumTypes().forEach(this::generateEnum);
     }
 
     private void generateEnum(EnumType type) {
@@ -266,6 +402,22 @@ public class TypesGenerator implements RubyGenerator {
 
         // Values:
         type.values().sorted().forEach(this::generateEnumValue);
+        buffer.addLine();
+
+        // Table that maps the text of the values to the constants, so that readers can return the frozen constants
+        // instead of creating new strings:
+        buffer.addComment();
+        buffer.addComment("The values of the enumerated type, indexed by their text.");
+        buffer.addComment();
+        buffer.addComment("@api private");
+        buffer.addComment();
+        buffer.addLine("VALUES = {");
+        type.values().sorted().forEach(value -> {
+            String constantName = rubyNames.getConstantStyleName(value.getName());
+            String constantValue = rubyNames.getMemberStyleName(value.getName());
+            buffer.addLine("'%1$s' => %2$s,", constantValue, constantName);
+        });
+        buffer.addLine("}.freeze");
 
         // End module:
         buffer.endModule(typeName.getClassName());
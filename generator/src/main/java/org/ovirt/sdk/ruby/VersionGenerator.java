@@ -18,8 +18,10 @@ package org.ovirt.sdk.ruby;
 
 import java.io.File;
 import java.io.IOException;
-import javax.enterprise.inject.spi.CDI;
+import java.util.EnumSet;
+import java.util.Set;
 import javax.inject.Inject;
+import javax.inject.Provider;
 
 import org.ovirt.api.metamodel.concepts.Model;
 
@@ -33,16 +35,30 @@ public class VersionGenerator implements RubyGenerator {
     // Reference to the objects used to generate the code:
     @Inject private RubyNames rubyNames;
 
-    // The buffer used to generate the Ruby code:
+    // The provider of the buffers used to generate the Ruby code, and the buffer currently in use:
+    @Inject private Provider<RubyBuffer> bufferProvider;
     private RubyBuffer buffer;
 
     public void setOut(File newOut) {
         out = newOut;
     }
 
+    public void setRubyNames(RubyNames newRubyNames) {
+        rubyNames = newRubyNames;
+    }
+
+    public void setBufferProvider(Provider<RubyBuffer> newBufferProvider) {
+        bufferProvider = newBufferProvider;
+    }
+
+    @Override
+    public Set<ModelPart> getDependencies() {
+        return EnumSet.noneOf(ModelPart.class);
+    }
+
     public void generate(Model model) throws IOException {
         // Generate the source:
-        buffer = CDI.current().select(RubyBuffer.class).get();
+        buffer = bufferProvider.get();
         buffer.setFileName(rubyNames.getModulePath() + File.separator + "version");
         generateVersion();
         try {
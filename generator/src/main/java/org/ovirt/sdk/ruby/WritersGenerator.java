@@ -17,9 +17,10 @@ limitations under the License.
 package org.ovirt.sdk.ruby;
 
 import java.io.File;
-import java.io.IOException;
-import javax.enterprise.inject.spi.CDI;
+import java.util.EnumSet;
+import java.util.Set;
 import javax.inject.Inject;
+import javax.inject.Provider;
 
 import org.ovirt.api.metamodel.concepts.EnumType;
 import org.ovirt.api.metamodel.concepts.ListType;
@@ -29,8 +30,6 @@ import org.ovirt.api.metamodel.concepts.PrimitiveType;
 import org.ovirt.api.metamodel.concepts.StructMember;
 import org.ovirt.api.metamodel.concepts.StructType;
 import org.ovirt.api.metamodel.concepts.Type;
-import org.ovirt.api.metamodel.tool.Names;
-import org.ovirt.api.metamodel.tool.SchemaNames;
 
 /**
  * This class is responsible for generating the classes that take instances of model types and generate the
@@ -41,33 +40,61 @@ public class WritersGenerator implements RubyGenerator {
     protected File out;
 
     // Reference to the objects used to generate the code:
-    @Inject private Names names;
-    @Inject private SchemaNames schemaNames;
     @Inject private RubyNames rubyNames;
+    @Inject private ModelIndexer modelIndexer;
+    @Inject private GeneratorOptions options;
 
-    // The buffer used to generate the Ruby code:
+    // The index of the model that is being generated:
+    private ModelIndex index;
+
+    // The provider of the buffers used to generate the Ruby code, and the buffer currently in use:
+    @Inject private Provider<RubyBuffer> bufferProvider;
     private RubyBuffer buffer;
 
+    // Reference to the object used to write the files:
+    @Inject private RubyFiles rubyFiles;
+
     public void setOut(File newOut) {
         out = newOut;
     }
 
+    public void setRubyNames(RubyNames newRubyNames) {
+        rubyNames = newRubyNames;
+    }
+
+    public void setModelIndexer(ModelIndexer newModelIndexer) {
+        modelIndexer = newModelIndexer;
+    }
+
+    public void setOptions(GeneratorOptions newOptions) {
+        options = newOptions;
+    }
+
+    public void setBufferProvider(Provider<RubyBuffer> newBufferProvider) {
+        bufferProvider = newBufferProvider;
+    }
+
+    public void setRubyFiles(RubyFiles newRubyFiles) {
+        rubyFiles = newRubyFiles;
+    }
+
+    @Override
+    public Set<ModelPart> getDependencies() {
+        return EnumSet.of(ModelPart.TYPES);
+    }
+
     public void generate(Model model) {
         // Calculate the file name:
         String fileName = rubyNames.getModulePath() + "/writers";
-        buffer = CDI.current().select(RubyBuffer.class).get();
+        buffer = bufferProvider.get();
         buffer.setFileName(fileName);
 
         // Generate the source:
+        index = modelIndexer.getIndex(model);
         generateSource(model);
 
         // Write the file:
-        try {
-            buffer.write(out);
-        }
-        catch (IOException exception) {
-            throw new IllegalStateException("Error writing writers file \"" + fileName + "\"", exception);
-        }
+        rubyFiles.write(buffer, out);
     }
 
     private void generateSource(Model model) {
@@ -76,28 +103,54 @@ public class WritersGenerator implements RubyGenerator {
         buffer.beginModule(moduleName);
         buffer.addLine();
 
-        // Generate a writer for each struct type:
-        model.types()
-            .filter(StructType.class::isInstance)
-            .map(StructType.class::cast)
-            .sorted()
-            .forEach(this::generateWriter);
-
-        // Generate code to register the writers:
-        model.types()
-            .filter(StructType.class::isInstance)
-            .map(StructType.class::cast)
-            .sorted()
-            .forEach(type -> {
+        if (options.isSplit()) {
+            // Generate a file for each writer, and the declarations that load them on demand:
+            RubyBuffer indexBuffer = buffer;
+            index.getStructTypes().forEach(type -> {
+                RubyName writerName = rubyNames.getWriterName(type);
+                generateClassFile(writerName, () -> generateWriter(type));
+                indexBuffer.addAutoload(writerName);
+            });
+            buffer = indexBuffer;
+            buffer.addLine();
+
+            // Generate code to register the writers. Note that the types are registered using their names, and that
+            // the writers are referenced only inside the lambdas, so that neither the types nor the writers are
+            // loaded till they are used for the first time:
+            index.getStructTypes().forEach(type -> {
+                String typeName = rubyNames.getTypeName(type).toString();
+                String writerName = rubyNames.getWriterName(type).getClassName();
+                buffer.addLine(
+                    "Writer.register('%1$s', lambda { |object, writer, singular| " +
+                    "%2$s.write_one(object, writer, singular) })",
+                    typeName,
+                    writerName
+                );
+            });
+        }
+        else {
+            // Generate a writer for each struct type:
+            index.getStructTypes().forEach(this::generateWriter);
+
+            // Generate code to register the writers:
+            index.getStructTypes().forEach(type -> {
                 String typeName = rubyNames.getTypeName(type).getClassName();
                 String writerName = rubyNames.getWriterName(type).getClassName();
                 buffer.addLine("Writer.register(%1$s, %2$s.method(:write_one))", typeName, writerName);
             });
+        }
 
         // End module:
         buffer.endModule(moduleName);
     }
 
+    private void generateClassFile(RubyName name, Runnable generator) {
+        rubyFiles.writeClassFile(out, name, classBuffer -> {
+            buffer = classBuffer;
+            generator.run();
+        });
+    }
+
     private void generateWriter(StructType type) {
         // Begin class:
         RubyName writerName = rubyNames.getWriterName(type);
@@ -106,10 +159,9 @@ public class WritersGenerator implements RubyGenerator {
         buffer.addLine();
 
         // Get the tags:
-        Name singularName = type.getName();
-        Name pluralName = names.getPlural(singularName);
-        String singularTag = schemaNames.getSchemaTagName(singularName);
-        String pluralTag = schemaNames.getSchemaTagName(pluralName);
+        ModelIndex.StructIndex struct = index.getStruct(type);
+        String singularTag = struct.getSingularTag();
+        String pluralTag = struct.getPluralTag();
 
         // Generate the method that writes one object:
         buffer.addLine("def self.write_one(object, writer, singular = nil)");
@@ -144,32 +196,20 @@ public class WritersGenerator implements RubyGenerator {
     }
 
     private void generateMembersWrite(StructType type) {
+        ModelIndex.StructIndex struct = index.getStruct(type);
+
         // Generate the code that writes the members that are represented as XML attributes:
-        type.attributes()
-            .filter(x -> schemaNames.isRepresentedAsAttribute(x.getName()))
-            .sorted()
-            .forEach(this::generateMemberWriteAsAttribute);
-        type.links()
-            .filter(x -> schemaNames.isRepresentedAsAttribute(x.getName()))
-            .sorted()
-            .forEach(this::generateMemberWriteAsAttribute);
+        struct.getXmlAttributeMembers().forEach(this::generateMemberWriteAsAttribute);
 
         // Generate the code that writes the members that are represented as inner elements:
-        type.attributes()
-            .filter(x -> !schemaNames.isRepresentedAsAttribute(x.getName()))
-            .sorted()
-            .forEach(this::generateMemberWriteAsElement);
-        type.links()
-            .filter(x -> !schemaNames.isRepresentedAsAttribute(x.getName()))
-            .sorted()
-            .forEach(this::generateMemberWriteAsElement);
+        struct.getXmlElementMembers().forEach(this::generateMemberWriteAsElement);
     }
 
     private void generateMemberWriteAsAttribute(StructMember member) {
         Name name = member.getName();
         Type type = member.getType();
         String property = rubyNames.getMemberStyleName(name);
-        String attribute = schemaNames.getSchemaTagName(name);
+        String attribute = index.getMember(member).getTag();
         if (type instanceof PrimitiveType) {
             generateWritePrimitivePropertyAsAttribute((PrimitiveType) type, attribute, "object." + property);
         }
@@ -199,7 +239,7 @@ public class WritersGenerator implements RubyGenerator {
         Name name = member.getName();
         Type type = member.getType();
         String property = rubyNames.getMemberStyleName(name);
-        String tag = schemaNames.getSchemaTagName(name);
+        String tag = index.getMember(member).getTag();
         if (type instanceof PrimitiveType) {
             generateWritePrimitivePropertyAsElement((PrimitiveType) type, tag, "object." + property);
         }
@@ -241,7 +281,7 @@ public class WritersGenerator implements RubyGenerator {
         Name name = member.getName();
         Type type = member.getType();
         String property = rubyNames.getMemberStyleName(name);
-        String tag = schemaNames.getSchemaTagName(name);
+        String tag = index.getMember(member).getTag();
         RubyName writerName = rubyNames.getWriterName(type);
         buffer.addLine(
             "%1$s.write_one(object.%2$s, writer, '%3$s') unless object.%2$s.nil?",
@@ -257,8 +297,9 @@ public class WritersGenerator implements RubyGenerator {
         ListType listType = (ListType) type;
         Type elementType = listType.getElementType();
         String property = rubyNames.getMemberStyleName(name);
-        String pluralTag = schemaNames.getSchemaTagName(name);
-        String singularTag = schemaNames.getSchemaTagName(names.getSingular(name));
+        ModelIndex.MemberIndex memberIndex = index.getMember(member);
+        String pluralTag = memberIndex.getTag();
+        String singularTag = memberIndex.getSingularTag();
         if (elementType instanceof PrimitiveType || elementType instanceof EnumType) {
             buffer.addLine("unless object.%1$s.nil?", property);
             buffer.addLine(  "writer.write_start('%1$s')", pluralTag);
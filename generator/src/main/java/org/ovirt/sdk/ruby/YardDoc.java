@@ -35,6 +35,10 @@ public class YardDoc {
     @Inject
     private RubyNames rubyNames;
 
+    public void setRubyNames(RubyNames newRubyNames) {
+        rubyNames = newRubyNames;
+    }
+
     /**
      * Generates the type string used in Yard documentation.
      */
@@ -0,0 +1,114 @@
+#
+# Copyright (c) 2016 Red Hat, Inc.
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#   http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+#
+# This script measures the memory retained by the objects created when reading typical responses of the server, like
+# lists of virtual machines, hosts and events. It loads the SDK from the `lib` directory, unless other directories are
+# added to the load path, so it can be used to compare the code generated with and without the `sparse` profile. For
+# example:
+#
+#   ruby -I /tmp/old/lib benchmarks/memory.rb
+#   ruby benchmarks/memory.rb
+#
+# The number of objects of each type can be changed with the `OBJECTS` environment variable.
+#
+
+$LOAD_PATH << File.expand_path('../lib', File.dirname(__FILE__))
+
+require 'objspace'
+require 'ovirtsdk4'
+
+# The number of objects of each type:
+OBJECTS = Integer(ENV['OBJECTS'] || 10_000)
+
+# The XML documents that describe one object of each type, with the elements that the server usually sends:
+PAYLOADS = {
+  'vms' => <<-'XML',
+    <vm href="/ovirt-engine/api/vms/%{id}" id="%{id}">
+      <name>vm%{id}</name>
+      <description>Virtual machine %{id}</description>
+      <comment></comment>
+      <cpu>
+        <architecture>x86_64</architecture>
+        <topology>
+          <cores>1</cores>
+          <sockets>2</sockets>
+          <threads>1</threads>
+        </topology>
+      </cpu>
+      <creation_time>2016-10-01T10:00:00.000+02:00</creation_time>
+      <memory>1073741824</memory>
+      <os>
+        <type>other</type>
+      </os>
+      <stateless>false</stateless>
+      <type>server</type>
+      <status>down</status>
+      <cluster href="/ovirt-engine/api/clusters/123" id="123"/>
+      <host href="/ovirt-engine/api/hosts/789" id="789"/>
+      <template href="/ovirt-engine/api/templates/000" id="000"/>
+    </vm>
+  XML
+  'hosts' => <<-'XML',
+    <host href="/ovirt-engine/api/hosts/%{id}" id="%{id}">
+      <name>host%{id}</name>
+      <address>host%{id}.example.com</address>
+      <cpu>
+        <name>Intel SandyBridge Family</name>
+        <speed>2600</speed>
+      </cpu>
+      <memory>17179869184</memory>
+      <port>54321</port>
+      <status>up</status>
+      <type>rhel</type>
+      <cluster href="/ovirt-engine/api/clusters/123" id="123"/>
+    </host>
+  XML
+  'events' => <<-'XML',
+    <event href="/ovirt-engine/api/events/%{id}" id="%{id}">
+      <description>Event %{id}</description>
+      <code>30</code>
+      <severity>normal</severity>
+      <time>2016-10-01T10:00:00.000+02:00</time>
+      <origin>oVirt</origin>
+      <user href="/ovirt-engine/api/users/456" id="456"/>
+    </event>
+  XML
+}.freeze
+
+PAYLOADS.each do |tag, payload|
+  xml = "<#{tag}>\n" + (1..OBJECTS).map { |id| format(payload, :id => id) }.join + "</#{tag}>\n"
+
+  # Measure the memory used by all the objects before and after reading the document, keeping a reference to the
+  # result, so that the difference is the memory retained by the result. The document is read with and without
+  # sharing the repeated values of the XML attributes:
+  [false, true].each do |dedup|
+    GC.start
+    before = ObjectSpace.memsize_of_all
+    reader = OvirtSDK4::XmlReader.new(xml, dedup)
+    begin
+      objects = OvirtSDK4::Reader.read(reader)
+    ensure
+      reader.close
+    end
+    GC.start
+    after = ObjectSpace.memsize_of_all
+    raise "Expected #{OBJECTS} objects, but got #{objects.size}" unless objects.size == OBJECTS
+
+    puts format('Read %d %s%s retaining %d bytes, %d bytes per object',
+      OBJECTS, tag, dedup ? ' with dedup' : '', after - before, (after - before) / OBJECTS)
+  end
+end
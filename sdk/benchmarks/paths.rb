@@ -0,0 +1,69 @@
+#
+# Copyright (c) 2016 Red Hat, Inc.
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#   http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+#
+# This script measures the time needed to locate services from paths, like the ones that the `follow_link` method
+# extracts from the `href` attributes of the objects, and calling the locator methods. It loads the SDK from the `lib` directory, unless other
+# directories are added to the load path, so it can be used to compare different versions of the generated services.
+# For example:
+#
+#   ruby -I /tmp/old/lib benchmarks/paths.rb
+#   ruby benchmarks/paths.rb
+#
+# The number of paths located in each run, and the number of runs, can be changed with the `PATHS` and `RUNS`
+# environment variables.
+#
+
+$LOAD_PATH << File.expand_path('../lib', File.dirname(__FILE__))
+
+require 'benchmark'
+require 'ovirtsdk4'
+
+# The number of paths located in each run, and the number of runs:
+PATHS = Integer(ENV['PATHS'] || 100_000)
+RUNS = Integer(ENV['RUNS'] || 10)
+
+# The services don't send requests when they are located, so there is no need for a real connection:
+system = OvirtSDK4::SystemService.new(nil, '')
+
+[
+  'vms',
+  'vms/123',
+  'vms/123/diskattachments/456',
+  'hosts/123/nics/456/networkattachments/789',
+].each do |path|
+  # Locate the path once, to make sure that all the classes are loaded before measuring:
+  system.service(path)
+
+  times = RUNS.times.map do
+    Benchmark.realtime { PATHS.times { system.service(path) } }
+  end
+  times.sort!
+  puts format('Located %s %.0f times per second (median of %d runs)', path, PATHS / times[times.size / 2], RUNS)
+end
+
+# Navigate to the same services calling the locators, as applications usually do, and count the objects allocated:
+GC.start
+allocated = GC.stat(:total_allocated_objects)
+times = RUNS.times.map do
+  Benchmark.realtime do
+    PATHS.times { system.vms_service.vm_service('123').disk_attachments_service.attachment_service('456') }
+  end
+end
+allocated = (GC.stat(:total_allocated_objects) - allocated) / (RUNS * PATHS)
+times.sort!
+puts format('Navigated to vms/123/diskattachments/456 %.0f times per second (median of %d runs), ' \
+  'allocating %d objects each time', PATHS / times[times.size / 2], RUNS, allocated)
@@ -0,0 +1,136 @@
+#
+# Copyright (c) 2016 Red Hat, Inc.
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#   http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+#
+# This script measures the time needed to read a large response containing a list of virtual machines, each of them
+# with the inner elements that the server usually sends. It loads the SDK from the `lib` directory, unless other
+# directories are added to the load path, so it can be used to compare different versions of the generated readers.
+# For example:
+#
+#   ruby -I /tmp/old/lib benchmarks/readers.rb
+#   ruby benchmarks/readers.rb
+#
+# The number of virtual machines and of repetitions can be changed with the `VMS` and `RUNS` environment variables.
+#
+
+$LOAD_PATH << File.expand_path('../lib', File.dirname(__FILE__))
+
+require 'benchmark'
+require 'ovirtsdk4'
+
+# The number of virtual machines in the response, and the number of times that it is read:
+VMS = Integer(ENV['VMS'] || 1000)
+RUNS = Integer(ENV['RUNS'] || 10)
+
+# The XML document that describes one virtual machine:
+VM = <<-'XML'.freeze
+  <vm href="/ovirt-engine/api/vms/%{id}" id="%{id}">
+    <actions>
+      <link href="/ovirt-engine/api/vms/%{id}/start" rel="start"/>
+      <link href="/ovirt-engine/api/vms/%{id}/stop" rel="stop"/>
+    </actions>
+    <name>vm%{id}</name>
+    <description>Virtual machine %{id}</description>
+    <comment></comment>
+    <link href="/ovirt-engine/api/vms/%{id}/diskattachments" rel="diskattachments"/>
+    <link href="/ovirt-engine/api/vms/%{id}/nics" rel="nics"/>
+    <link href="/ovirt-engine/api/vms/%{id}/tags" rel="tags"/>
+    <bios>
+      <boot_menu>
+        <enabled>false</enabled>
+      </boot_menu>
+    </bios>
+    <cpu>
+      <architecture>x86_64</architecture>
+      <topology>
+        <cores>1</cores>
+        <sockets>2</sockets>
+        <threads>1</threads>
+      </topology>
+    </cpu>
+    <creation_time>2016-10-01T10:00:00.000+02:00</creation_time>
+    <delete_protected>false</delete_protected>
+    <high_availability>
+      <enabled>false</enabled>
+      <priority>0</priority>
+    </high_availability>
+    <memory>1073741824</memory>
+    <origin>ovirt</origin>
+    <os>
+      <boot>
+        <devices>
+          <device>hd</device>
+        </devices>
+      </boot>
+      <type>other</type>
+    </os>
+    <stateless>false</stateless>
+    <type>server</type>
+    <status>down</status>
+    <stop_time>2016-10-01T11:00:00.000+02:00</stop_time>
+    <cluster href="/ovirt-engine/api/clusters/123" id="123"/>
+    <cpu_profile href="/ovirt-engine/api/cpuprofiles/456" id="456"/>
+    <host href="/ovirt-engine/api/hosts/789" id="789"/>
+    <template href="/ovirt-engine/api/templates/000" id="000"/>
+  </vm>
+XML
+
+xml = "<vms>\n" + (1..VMS).map { |id| format(VM, :id => id) }.join + "</vms>\n"
+
+# Read the document once, to make sure that all the classes are loaded before measuring:
+vms = OvirtSDK4::Reader.read(xml)
+raise "Expected #{VMS} virtual machines, but got #{vms.size}" unless vms.size == VMS
+
+times = RUNS.times.map do
+  Benchmark.realtime { OvirtSDK4::Reader.read(xml) }
+end
+times.sort!
+puts format('Read %d virtual machines (%d bytes) in %.1f ms (median of %d runs)',
+  VMS, xml.bytesize, times[times.size / 2] * 1000, RUNS)
+
+# Read the same document yielding the virtual machines one at a time, as the `list_each` methods of the services do:
+times = RUNS.times.map do
+  Benchmark.realtime do
+    reader = OvirtSDK4::XmlReader.new(xml)
+    begin
+      OvirtSDK4::VmReader.read_each(reader) { |vm| vm }
+    ensure
+      reader.close
+    end
+  end
+end
+times.sort!
+puts format('Read each of %d virtual machines in %.1f ms (median of %d runs)',
+  VMS, times[times.size / 2] * 1000, RUNS)
+
+# Read the same document again, using only the top level attributes of the virtual machines, as applications that just
+# list names and states do. With the readers generated in lazy mode the nested elements aren't parsed, so the number
+# of allocated objects is also reported:
+GC.start
+allocated = GC.stat(:total_allocated_objects)
+times = RUNS.times.map do
+  Benchmark.realtime do
+    OvirtSDK4::Reader.read(xml).each do |vm|
+      vm.id
+      vm.name
+      vm.status
+    end
+  end
+end
+allocated = (GC.stat(:total_allocated_objects) - allocated) / RUNS
+times.sort!
+puts format('Read %d virtual machines using only top level attributes in %.1f ms (median of %d runs), ' \
+  'allocating %d objects per run', VMS, times[times.size / 2] * 1000, RUNS, allocated)
@@ -0,0 +1,71 @@
+#
+# Copyright (c) 2016 Red Hat, Inc.
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#   http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+#
+# This script measures the time and the memory needed to load the SDK, so that the monolithic layout of the generated
+# code can be compared with the split layout generated with the `--split` option. It receives as arguments the
+# directories that contain the generated code, and for each of them it starts several Ruby processes that load the SDK
+# from that directory and report the elapsed time and the resident set size. For example:
+#
+#   ruby benchmarks/startup.rb /tmp/monolithic /tmp/split
+#
+# The hand written files and the compiled extension are taken from the `lib` directory of the SDK, so the extension
+# needs to be compiled before running the script.
+#
+
+require 'open3'
+require 'rbconfig'
+
+# The number of processes started for each directory:
+RUNS = Integer(ENV['RUNS'] || 10)
+
+# The code executed by the child processes. It loads the SDK, optionally creates an object of each of the classes whose
+# names are given in the `TOUCH` environment variable, and then prints the time and the resident set size, in kilobytes:
+PROBE = <<-'RUBY'.freeze
+  start = Process.clock_gettime(Process::CLOCK_MONOTONIC)
+  require 'ovirtsdk4'
+  ENV['TOUCH'].to_s.split(',').each { |name| OvirtSDK4.const_get(name) }
+  elapsed = Process.clock_gettime(Process::CLOCK_MONOTONIC) - start
+  rss = File.read('/proc/self/status')[/^VmRSS:\s+(\d+)/, 1].to_i
+  puts "#{elapsed} #{rss} #{$LOADED_FEATURES.size}"
+RUBY
+
+def median(values)
+  sorted = values.sort
+  sorted[sorted.size / 2]
+end
+
+if ARGV.empty?
+  warn "Usage: #{$PROGRAM_NAME} DIRECTORY..."
+  exit 1
+end
+
+lib = File.expand_path('../lib', File.dirname(__FILE__))
+puts format('%-40s %10s %10s %10s', 'Directory', 'Time (ms)', 'RSS (KiB)', 'Files')
+ARGV.each do |dir|
+  times = []
+  sizes = []
+  files = 0
+  RUNS.times do
+    command = [RbConfig.ruby, '-I', File.expand_path(dir), '-I', lib, '-e', PROBE]
+    output, status = Open3.capture2(*command)
+    raise "Process for directory '#{dir}' failed with status #{status.exitstatus}" unless status.success?
+    time, size, files = output.split.map(&:to_f)
+    times << time
+    sizes << size
+  end
+  puts format('%-40s %10.1f %10d %10d', dir, median(times) * 1000, median(sizes), files)
+end
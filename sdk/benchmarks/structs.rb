@@ -0,0 +1,66 @@
+#
+# Copyright (c) 2016 Red Hat, Inc.
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#   http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+#
+# This script measures the time needed to create and use instances of the generated struct types. It loads the SDK
+# from the `lib` directory, unless other directories are added to the load path, so it can be used to compare the
+# code generated with and without the `fast-structs` profile. For example:
+#
+#   ruby -I /tmp/old/lib benchmarks/structs.rb
+#   ruby benchmarks/structs.rb
+#
+# The number of objects and of repetitions can be changed with the `OBJECTS` and `RUNS` environment variables.
+#
+
+$LOAD_PATH << File.expand_path('../lib', File.dirname(__FILE__))
+
+require 'benchmark'
+require 'ovirtsdk4'
+
+# The number of objects created in each run, and the number of runs:
+OBJECTS = Integer(ENV['OBJECTS'] || 100_000)
+RUNS = Integer(ENV['RUNS'] || 10)
+
+# Runs the given block the given number of times, and prints the median of the runs in operations per second:
+def measure(title)
+  times = RUNS.times.map do
+    Benchmark.realtime { OBJECTS.times { yield } }
+  end
+  times.sort!
+  puts format('%s: %.0f operations per second (median of %d runs)', title, OBJECTS / times[times.size / 2], RUNS)
+end
+
+# Create the objects without options, as the readers do:
+measure('Create empty virtual machines') do
+  OvirtSDK4::Vm.new
+end
+
+# Create the objects with a few options, as applications do when sending requests:
+measure('Create virtual machines with options') do
+  OvirtSDK4::Vm.new(
+    :name => 'myvm',
+    :cluster => { :name => 'mycluster' },
+    :template => { :name => 'Blank' }
+  )
+end
+
+# Create the objects and use some of their attributes:
+vm = OvirtSDK4::Vm.new(:id => '123', :name => 'myvm', :status => OvirtSDK4::VmStatus::UP)
+measure('Get attributes of virtual machines') do
+  vm.id
+  vm.name
+  vm.status
+end
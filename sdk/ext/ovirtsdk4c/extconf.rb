@@ -30,5 +30,15 @@ unless pkg_config('libcurl')
   raise 'The "libcurl" package isn\'t available.'
 end
 
+# Enable the compiler warnings, as part of the source of the extension is generated:
+$CFLAGS = "#{$CFLAGS} -Wall"
+
+# Check if the native readers have been generated. If they have, this defines the "HAVE_OV_READERS_H" macro that is
+# used to decide if they should be initialized. If the header isn't present then the source, if any, is a leftover that
+# would never be initialized, so it is excluded from the build:
+unless have_header('ov_readers.h')
+  $srcs = Dir.glob(File.join($srcdir, '*.c')).reject { |path| File.basename(path) == 'ov_readers.c' }
+end
+
 # Create the Makefile:
 create_makefile 'ovirtsdk4c'
@@ -36,6 +36,7 @@ static ID STRING_IO_ID;
 
 typedef struct {
     VALUE io;
+    VALUE pool;
     xmlTextReaderPtr reader;
     bool closed;
 } ov_xml_reader_object;
@@ -51,6 +52,11 @@ static void ov_xml_reader_mark(ov_xml_reader_object *object) {
     if (!NIL_P(object->io)) {
         rb_gc_mark(object->io);
     }
+
+    /* Mark the pool of strings as reachable: */
+    if (!NIL_P(object->pool)) {
+        rb_gc_mark(object->pool);
+    }
 }
 
 static void ov_xml_reader_free(ov_xml_reader_object *object) {
@@ -72,6 +78,7 @@ static VALUE ov_xml_reader_alloc(VALUE klass) {
 
     object = ALLOC(ov_xml_reader_object);
     memset(object, 0, sizeof(ov_xml_reader_object));
+    object->pool = Qnil;
     return Data_Wrap_Struct(klass, ov_xml_reader_mark, ov_xml_reader_free, object);
 }
 
@@ -105,7 +112,29 @@ static VALUE ov_xml_reader_create_string_io(VALUE text) {
     return sio_obj;
 }
 
-static VALUE ov_xml_reader_initialize(VALUE self, VALUE io) {
+static VALUE ov_xml_reader_new_string(ov_xml_reader_object* object, const char* c_value) {
+    VALUE value;
+    VALUE pooled;
+
+    /* Create the string, and return it directly if there is no pool: */
+    value = rb_str_new_cstr(c_value);
+    if (NIL_P(object->pool)) {
+        return value;
+    }
+
+    /* Return the equal string that is already in the pool, or add this one: */
+    pooled = rb_hash_lookup2(object->pool, value, Qnil);
+    if (!NIL_P(pooled)) {
+        return pooled;
+    }
+    rb_str_freeze(value);
+    rb_hash_aset(object->pool, value, value);
+    return value;
+}
+
+static VALUE ov_xml_reader_initialize(int argc, VALUE* argv, VALUE self) {
+    VALUE io;
+    VALUE dedup;
     VALUE io_class;
     int rc = 0;
     ov_xml_reader_object* object = NULL;
@@ -113,6 +142,11 @@ static VALUE ov_xml_reader_initialize(VALUE self, VALUE io) {
     /* Get the pointer to the object: */
     Data_Get_Struct(self, ov_xml_reader_object, object);
 
+    /* The second parameter is optional, and indicates if the values of the attributes should be taken from a pool of
+       frozen strings, so that repeated values, like the identifiers of clusters or hosts, are created only once: */
+    rb_scan_args(argc, argv, "11", &io, &dedup);
+    object->pool = RTEST(dedup)? rb_hash_new(): Qnil;
+
     /* The parameter of the constructor can be a string or an IO object. If it is a string then we need to create aa
        IO object to read from it. */
     io_class = rb_class_of(io);
@@ -148,7 +182,7 @@ static VALUE ov_xml_reader_initialize(VALUE self, VALUE io) {
     return self;
 }
 
-static VALUE ov_xml_reader_read(VALUE self) {
+VALUE ov_xml_reader_read(VALUE self) {
     int rc = 0;
     ov_xml_reader_object* object = NULL;
 
@@ -165,7 +199,7 @@ static VALUE ov_xml_reader_read(VALUE self) {
     return Qnil;
 }
 
-static VALUE ov_xml_reader_forward(VALUE self) {
+VALUE ov_xml_reader_forward(VALUE self) {
     int c_type = 0;
     int rc = 0;
     ov_xml_reader_object *object = NULL;
@@ -193,22 +227,25 @@ static VALUE ov_xml_reader_forward(VALUE self) {
     }
 }
 
-static VALUE ov_xml_reader_node_name(VALUE self) {
-    VALUE name;
-    const xmlChar* c_name = NULL;
+const char* ov_xml_reader_get_node_name(VALUE self) {
     ov_xml_reader_object* object = NULL;
 
     Data_Get_Struct(self, ov_xml_reader_object, object);
     ov_xml_reader_check_closed(object);
-    c_name = xmlTextReaderConstName(object->reader);
+    return (const char*) xmlTextReaderConstName(object->reader);
+}
+
+static VALUE ov_xml_reader_node_name(VALUE self) {
+    const char* c_name = NULL;
+
+    c_name = ov_xml_reader_get_node_name(self);
     if (c_name == NULL) {
         return Qnil;
     }
-    name = rb_str_new_cstr((char*) c_name);
-    return name;
+    return rb_str_new_cstr(c_name);
 }
 
-static VALUE ov_xml_reader_empty_element(VALUE self) {
+VALUE ov_xml_reader_empty_element(VALUE self) {
     int c_empty = 0;
     ov_xml_reader_object* object = NULL;
 
@@ -221,25 +258,83 @@ static VALUE ov_xml_reader_empty_element(VALUE self) {
     return c_empty? Qtrue: Qfalse;
 }
 
-static VALUE ov_xml_reader_get_attribute(VALUE self, VALUE name) {
+VALUE ov_xml_reader_get_attribute_value(VALUE self, const char* name) {
     VALUE value;
     ov_xml_reader_object* object = NULL;
-    xmlChar* c_name = NULL;
     xmlChar* c_value = NULL;
 
     Data_Get_Struct(self, ov_xml_reader_object, object);
     ov_xml_reader_check_closed(object);
-    c_name = (xmlChar*) StringValueCStr(name);
-    c_value = xmlTextReaderGetAttribute(object->reader, c_name);
+    c_value = xmlTextReaderGetAttribute(object->reader, (const xmlChar*) name);
     if (c_value == NULL) {
         return Qnil;
     }
-    value = rb_str_new_cstr((char*) c_value);
+    value = ov_xml_reader_new_string(object, (char*) c_value);
     xmlFree(c_value);
     return value;
 }
 
-static VALUE ov_xml_reader_read_element(VALUE self) {
+static VALUE ov_xml_reader_get_attribute(VALUE self, VALUE name) {
+    return ov_xml_reader_get_attribute_value(self, StringValueCStr(name));
+}
+
+void ov_xml_reader_get_attribute_values(VALUE self, int count, const char** names, VALUE* values) {
+    int i = 0;
+    int rc = 0;
+    ov_xml_reader_object* object = NULL;
+    const char* c_name = NULL;
+    const char* c_value = NULL;
+
+    Data_Get_Struct(self, ov_xml_reader_object, object);
+    ov_xml_reader_check_closed(object);
+
+    /* Attributes that aren't present are nil: */
+    for (i = 0; i < count; i++) {
+        values[i] = Qnil;
+    }
+
+    /* Walk the attributes once, keeping the values of the requested ones: */
+    rc = xmlTextReaderMoveToFirstAttribute(object->reader);
+    while (rc == 1) {
+        c_name = (const char*) xmlTextReaderConstName(object->reader);
+        for (i = 0; i < count; i++) {
+            if (strcmp(c_name, names[i]) == 0) {
+                c_value = (const char*) xmlTextReaderConstValue(object->reader);
+                values[i] = ov_xml_reader_new_string(object, c_value != NULL? c_value: "");
+            }
+        }
+        rc = xmlTextReaderMoveToNextAttribute(object->reader);
+    }
+    if (rc == -1) {
+        rb_raise(ov_error_class, "Can't move to next attribute");
+    }
+
+    /* Move back to the element, so that the rest of the methods work as usual: */
+    if (xmlTextReaderMoveToElement(object->reader) == -1) {
+        rb_raise(ov_error_class, "Can't move back to element");
+    }
+}
+
+static VALUE ov_xml_reader_get_attributes(VALUE self, VALUE names) {
+    VALUE name;
+    int count = 0;
+    int i = 0;
+    const char** c_names = NULL;
+    VALUE* values = NULL;
+
+    Check_Type(names, T_ARRAY);
+    count = (int) RARRAY_LEN(names);
+    c_names = ALLOCA_N(const char*, count);
+    values = ALLOCA_N(VALUE, count);
+    for (i = 0; i < count; i++) {
+        name = rb_ary_entry(names, i);
+        c_names[i] = StringValueCStr(name);
+    }
+    ov_xml_reader_get_attribute_values(self, count, c_names, values);
+    return rb_ary_new4(count, values);
+}
+
+VALUE ov_xml_reader_read_element(VALUE self) {
     VALUE value;
     int c_empty = 0;
     int c_type = 0;
@@ -298,7 +393,7 @@ static VALUE ov_xml_reader_read_element(VALUE self) {
     return value;
 }
 
-static VALUE ov_xml_reader_read_elements(VALUE self) {
+VALUE ov_xml_reader_read_elements(VALUE self) {
     VALUE element;
     VALUE list;
     int c_empty = 0;
@@ -382,7 +477,7 @@ static VALUE ov_xml_reader_read_elements(VALUE self) {
     return list;
 }
 
-static VALUE ov_xml_reader_next_element(VALUE self) {
+VALUE ov_xml_reader_next_element(VALUE self) {
     int rc = 0;
     ov_xml_reader_object* object = NULL;
 
@@ -398,6 +493,32 @@ static VALUE ov_xml_reader_next_element(VALUE self) {
     rb_raise(ov_error_class, "Can't move to next element");
 }
 
+static VALUE ov_xml_reader_read_outer_xml(VALUE self) {
+    VALUE value;
+    int rc = 0;
+    ov_xml_reader_object* object = NULL;
+    xmlChar* c_value = NULL;
+
+    Data_Get_Struct(self, ov_xml_reader_object, object);
+    ov_xml_reader_check_closed(object);
+
+    /* Get the text of the current element, including its start and end tags: */
+    c_value = xmlTextReaderReadOuterXml(object->reader);
+    if (c_value == NULL) {
+        rb_raise(ov_error_class, "Can't read the outer XML of the current element");
+    }
+    value = rb_str_new_cstr((char*) c_value);
+    xmlFree(c_value);
+
+    /* Move to the next element, skipping the content that has already been read: */
+    rc = xmlTextReaderNext(object->reader);
+    if (rc == -1) {
+        rb_raise(ov_error_class, "Can't move to next element");
+    }
+
+    return value;
+}
+
 static VALUE ov_xml_reader_close(VALUE self) {
     ov_xml_reader_object* object = NULL;
 
@@ -406,6 +527,7 @@ static VALUE ov_xml_reader_close(VALUE self) {
     xmlFreeTextReader(object->reader);
     object->reader = NULL;
     object->closed = true;
+    object->pool = Qnil;
     return Qnil;
 }
 
@@ -418,7 +540,7 @@ void ov_xml_reader_define(void) {
 
     /* Define the constructor: */
     rb_define_alloc_func(ov_xml_reader_class, ov_xml_reader_alloc);
-    rb_define_method(ov_xml_reader_class, "initialize", ov_xml_reader_initialize, 1);
+    rb_define_method(ov_xml_reader_class, "initialize", ov_xml_reader_initialize, -1);
 
     /* Define the methods: */
     rb_define_method(ov_xml_reader_class, "forward", ov_xml_reader_forward, 0);
@@ -426,9 +548,11 @@ void ov_xml_reader_define(void) {
     rb_define_method(ov_xml_reader_class, "node_name", ov_xml_reader_node_name, 0);
     rb_define_method(ov_xml_reader_class, "empty_element?", ov_xml_reader_empty_element, 0);
     rb_define_method(ov_xml_reader_class, "get_attribute", ov_xml_reader_get_attribute, 1);
+    rb_define_method(ov_xml_reader_class, "get_attributes", ov_xml_reader_get_attributes, 1);
     rb_define_method(ov_xml_reader_class, "read_element", ov_xml_reader_read_element, 0);
     rb_define_method(ov_xml_reader_class, "read_elements", ov_xml_reader_read_elements, 0);
     rb_define_method(ov_xml_reader_class, "next_element", ov_xml_reader_next_element, 0);
+    rb_define_method(ov_xml_reader_class, "read_outer_xml", ov_xml_reader_read_outer_xml, 0);
     rb_define_method(ov_xml_reader_class, "close", ov_xml_reader_close, 0);
 
     /* Create method identifiers: */
@@ -23,4 +23,23 @@ extern VALUE ov_xml_reader_class;
 // Initialization function:
 extern void ov_xml_reader_define(void);
 
+// Functions that implement the methods of the class, also used directly by the generated native readers:
+extern VALUE ov_xml_reader_read(VALUE self);
+extern VALUE ov_xml_reader_forward(VALUE self);
+extern VALUE ov_xml_reader_empty_element(VALUE self);
+extern VALUE ov_xml_reader_read_element(VALUE self);
+extern VALUE ov_xml_reader_read_elements(VALUE self);
+extern VALUE ov_xml_reader_next_element(VALUE self);
+
+// Returns the name of the current node, or NULL if there is no current node. The result is owned by the reader, and
+// it is valid only till the reader is moved to other node:
+extern const char* ov_xml_reader_get_node_name(VALUE self);
+
+// Returns the value of the given attribute of the current node, or nil if it doesn't have that attribute:
+extern VALUE ov_xml_reader_get_attribute_value(VALUE self, const char* name);
+
+// Stores in the given array the values of the attributes of the current node with the given names, or nil for the
+// attributes that it doesn't have. The attributes are visited only once, regardless of the number of names:
+extern void ov_xml_reader_get_attribute_values(VALUE self, int count, const char** names, VALUE* values);
+
 #endif
@@ -24,6 +24,11 @@ limitations under the License.
 #include "ov_xml_reader.h"
 #include "ov_xml_writer.h"
 
+/* The native readers are generated, and they may not be present if the code generator was run without them: */
+#ifdef HAVE_OV_READERS_H
+#include "ov_readers.h"
+#endif
+
 void Init_ovirtsdk4c(void) {
     /* Define the module: */
     ov_module_define();
@@ -35,4 +40,9 @@ void Init_ovirtsdk4c(void) {
     ov_http_response_define();
     ov_xml_reader_define();
     ov_xml_writer_define();
+
+    /* Define the native readers, if they have been generated: */
+#ifdef HAVE_OV_READERS_H
+    ov_readers_define();
+#endif
 }
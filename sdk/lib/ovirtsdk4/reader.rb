@@ -45,6 +45,34 @@ module OvirtSDK4
       return reader.read_elements
     end
 
+    #
+    # Reads an enumerated value, assuming that the cursor is positioned at the start element that contains the value.
+    # The text is replaced by the frozen constant of the enumerated type that has the same text, so that all the
+    # objects share it. Values that the enumerated type doesn't contain are returned as they are.
+    #
+    # @param reader [XmlReader]
+    # @param values [Hash<String, String>] The constants of the enumerated type, indexed by their text.
+    # @return [String]
+    #
+    def self.read_enum(reader, values)
+      text = reader.read_element
+      return nil if text.nil?
+      return values.fetch(text, text)
+    end
+
+    #
+    # Reads a list of enumerated values, assuming that the cursor is positioned at the start of the element that
+    # contains the first value. The texts are replaced by the frozen constants of the enumerated type, like in the
+    # `read_enum` method.
+    #
+    # @param reader [XmlReader]
+    # @param values [Hash<String, String>] The constants of the enumerated type, indexed by their text.
+    # @return [Array<String>]
+    #
+    def self.read_enums(reader, values)
+      return reader.read_elements.map! { |text| values.fetch(text, text) }
+    end
+
     #
     # Converts the given text to a boolean value.
     #
@@ -191,6 +219,63 @@ module OvirtSDK4
       return reader.read_elements.map { |text| Reader.parse_date(text) }
     end
 
+    #
+    # Reads a list of objects, like the `read_many` method of the specific readers, but instead of returning a list
+    # containing all of them yields each object to the given block as soon as it has been read, so that only one
+    # object needs to be kept in memory. It must be called on the specific reader, for example `VmReader.read_each`,
+    # as it uses its `read_one` method.
+    #
+    # @param reader [XmlReader]
+    # @param fields [Hash] The selection of fields to read, as returned by {parse_fields}, or `nil` to read all of them.
+    # @yield [object] Each object read.
+    #
+    def self.read_each(reader, fields = nil)
+      # Do nothing if there aren't more tags:
+      return unless reader.forward
+
+      # Discard the start tag:
+      empty = reader.empty_element?
+      reader.read
+      return if empty
+
+      # Process the inner elements:
+      while reader.forward do
+        yield read_one(reader, fields)
+      end
+
+      # Discard the end tag:
+      reader.read
+    end
+
+    #
+    # Converts a list of field names into the selection of fields used by the generated readers. Each field can be the
+    # name of an attribute, like `:name`, or a path separated by dots, like `'host.name'`, to select attributes of
+    # nested objects. The result is a hash where the keys are the names of the selected attributes, and the values are
+    # the selections for the nested objects, or `nil` when they should be read completely. For example, for
+    # `[:id, :name, 'host.name']` the result is `{'id' => nil, 'name' => nil, 'host' => {'name' => nil}}`.
+    #
+    # @param fields [Array<Symbol, String>] The names of the fields, or `nil` to select all of them.
+    # @return [Hash] The selection of fields, or `nil` if all of them should be read.
+    #
+    def self.parse_fields(fields)
+      return nil if fields.nil?
+      selection = {}
+      fields.each do |field|
+        node = selection
+        names = field.to_s.split('.')
+        names.each_with_index do |name, index|
+          # Nothing else to do if the attribute is already selected completely:
+          break if node.key?(name) && node[name].nil?
+          if index == names.size - 1
+            node[name] = nil
+          else
+            node = (node[name] ||= {})
+          end
+        end
+      end
+      return selection
+    end
+
     #
     # This hash stores for each known tag a reference to the method that read the object corresponding for that tag. For
     # example, for the `vm` tag it will contain a reference to the `VmReader.read_one` method, and for the `vms` tag
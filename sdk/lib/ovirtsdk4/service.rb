@@ -16,11 +16,99 @@
 
 module OvirtSDK4
 
+  #
+  # This class is a bounded cache of the services returned by the locators with parameters, for example the
+  # `vm_service` method of the `VmsService` class, indexed by the value of the parameter. When the cache is full the
+  # least recently used service is removed. Access is synchronized, so the cache can be shared by multiple threads.
+  #
+  # Each service creates its caches the first time that the corresponding locator is called. Two threads calling it at
+  # the same time may each create one, but then one of them is discarded, which only means that a service is created
+  # twice.
+  #
+  # Note that the size is the bound of each cache, not of the total number of services. The cached services have
+  # their own caches, so the number of services kept for a path with several parameters is the product of the sizes
+  # of the caches along that path. For example, with the default size, up to 100 virtual machine services and up to
+  # 100 disk attachment services for each of them.
+  #
+  # @api private
+  #
+  class ServiceCache
+
+    #
+    # Creates a new empty cache.
+    #
+    # @param size [Integer] The maximum number of services kept in the cache.
+    #
+    def initialize(size = 100)
+      @size = size
+      @services = {}
+      @mutex = Mutex.new
+    end
+
+    #
+    # Returns the service corresponding to the given key, calling the block to create it if it isn't in the cache.
+    #
+    # @param key [Object] The value of the parameter of the locator.
+    # @yieldreturn [Service] The service to add to the cache.
+    # @return [Service]
+    #
+    def fetch(key)
+      @mutex.synchronize do
+        # Hashes preserve the insertion order, so removing the service and adding it again moves it to the end, and
+        # the first one is always the least recently used:
+        service = @services.delete(key)
+        if service.nil?
+          service = yield
+          @services.shift if @services.size >= @size
+        end
+        @services[key] = service
+        return service
+      end
+    end
+
+  end
+
   #
   # This is the base class for all the services of the SDK. It contains the utility methods used by all of them.
   #
   class Service
 
+    #
+    # The names of the classes of the services that correspond to the segments of a path, indexed by segment. The
+    # generated services replace it with their own table.
+    #
+    # @api private
+    #
+    LOCATORS = {}.freeze
+
+    #
+    # The name of the class of the service that corresponds to the segments that aren't in the `LOCATORS` table. The
+    # generated services replace it when they have a locator with parameters.
+    #
+    # @api private
+    #
+    DEFAULT_LOCATOR = nil
+
+    #
+    # Locates the service corresponding to the given path. The path is split only once, and the segments are resolved
+    # walking the `LOCATORS` tables of the classes of the services, so that only the service corresponding to the
+    # complete path is created.
+    #
+    # @param path [String] The path of the service, relative to this service, for example `vms/123/diskattachments`.
+    # @return [Service] A reference to the service.
+    #
+    def service(path)
+      return self if path.nil? || path.empty?
+      segments = path.split('/')
+      service_class = self.class
+      segments.each do |segment|
+        name = service_class::LOCATORS[segment] || service_class::DEFAULT_LOCATOR
+        raise Error.new("The path \"#{path}\" doesn't correspond to any service") if name.nil?
+        service_class = OvirtSDK4.const_get(name)
+      end
+      return service_class.new(@connection, "#{@path}/#{segments.join('/')}")
+    end
+
     #
     # Creates and raises an error containing the details of the given HTTP response and fault.
     #
@@ -108,6 +108,58 @@ module OvirtSDK4
       self.href = opts[:href]
     end
 
+    #
+    # Stores the value of a member in the hash used by the types generated in sparse mode. Members whose value is `nil`
+    # are removed from the hash, and the hash is only created when a member has a value, so objects that only have a
+    # few members set use less memory than with one instance variable per member.
+    #
+    # @param name [Symbol] The name of the member.
+    # @param value [Object] The value of the member.
+    #
+    # @api private
+    #
+    def store_value(name, value)
+      if value.nil?
+        @values.delete(name) unless @values.nil?
+      else
+        @values ||= {}
+        @values[name] = value
+      end
+    end
+
+    #
+    # Stores the XML text of a member, so that it is parsed only when the member is used for the first time. This is
+    # used by the readers generated in lazy mode, for the members that are structs or lists of structs.
+    #
+    # @param name [Symbol] The name of the member.
+    # @param xml [String] The XML text of the member, including the start and end tags.
+    #
+    # @api private
+    #
+    def lazy_store(name, xml)
+      @lazy_members ||= {}
+      @lazy_members[name] = xml
+    end
+
+    #
+    # Parses the stored XML text of a member, and forgets it. The block receives an XML reader positioned at the
+    # start tag of the member, and should return the value of the member.
+    #
+    # @param name [Symbol] The name of the member.
+    # @return [Object] The result of the block.
+    #
+    # @api private
+    #
+    def lazy_load(name)
+      reader = XmlReader.new(@lazy_members.delete(name))
+      begin
+        reader.forward
+        return yield(reader)
+      ensure
+        reader.close
+      end
+    end
+
   end
 
   #
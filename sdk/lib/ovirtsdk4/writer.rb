@@ -125,17 +125,19 @@ module OvirtSDK4
 
     #
     # This hash stores for each known type a reference to the method that writes the XML document corresponding for that
-    # type. For example, for the `Vm` type it will contain a reference to the `VmWriter.write_one` method.
+    # type. For example, for the `Vm` type it will contain a reference to the `VmWriter.write_one` method. The keys are
+    # the fully qualified names of the types, so that writers can be registered without loading the types.
     #
     @@writers = {}
 
     #
     # Registers a write method.
     #
-    # @param type [Class] The type.
-    # @param writer [Method] The reference to the method that writes the XML document corresponding to the type.
+    # @param type [Class, String] The type, or its fully qualified name, for example `OvirtSDK4::Vm`.
+    # @param writer [Method, Proc] The reference to the method that writes the XML document corresponding to the type.
     #
     def self.register(type, writer)
+      type = type.name if type.is_a?(Class)
       @@writers[type] = writer
     end
 
@@ -188,7 +190,7 @@ module OvirtSDK4
         else
           # Select the specific writer according to the type:
           type = object.class
-          writer = @@writers[type]
+          writer = @@writers[type.name]
           if writer.nil?
             raise Error.new("Can't find a writer for type '#{type}'")
           end
@@ -88,6 +88,34 @@ describe SDK::Connection do
 
     end
 
+    context "given 'vms/123/diskattachments/456'" do
+
+      it "returns a reference to the disk attachment service with the complete path" do
+        result = @connection.service('vms/123/diskattachments/456')
+        expect(result).to be_a(SDK::DiskAttachmentService)
+        expect(result.to_s).to end_with(':/vms/123/diskattachments/456>')
+      end
+
+    end
+
+    context "given the same locators twice" do
+
+      it "returns the same services" do
+        first = @connection.system_service.vms_service.vm_service('123')
+        second = @connection.system_service.vms_service.vm_service('123')
+        expect(second).to be(first)
+      end
+
+    end
+
+    context "given a path that doesn't correspond to any service" do
+
+      it "raises an error" do
+        expect { @connection.service('junk') }.to raise_error(SDK::Error, /junk/)
+      end
+
+    end
+
   end
 
 end
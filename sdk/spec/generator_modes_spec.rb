@@ -0,0 +1,111 @@
+#
+# Copyright (c) 2016 Red Hat, Inc.
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#   http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+# The generator mode used to generate the SDK, set by the Maven profiles when they run the tests:
+GENERATOR_MODE = ENV['OVIRT_SDK_MODE']
+
+describe "generated code" do
+
+  context "in split mode", :if => GENERATOR_MODE == 'split' do
+
+    it "loads each struct from its own file" do
+      file = SDK::Vm.instance_method(:initialize).source_location.first
+      expect(File.basename(file)).to_not eql('types.rb')
+    end
+
+    it "loads each reader from its own file" do
+      file = SDK::VmReader.method(:read_one).source_location.first
+      expect(File.basename(file)).to_not eql('readers.rb')
+    end
+
+    it "loads each service from its own file" do
+      file = SDK::VmsService.instance_method(:list).source_location.first
+      expect(File.basename(file)).to_not eql('services.rb')
+    end
+
+  end
+
+  context "in lazy mode", :if => GENERATOR_MODE == 'lazy' do
+
+    def read_vm
+      reader = SDK::XmlReader.new('<vm><cpu><topology><cores>2</cores></topology></cpu><name>myvm</name></vm>')
+      vm = SDK::VmReader.read_one(reader)
+      reader.close
+      vm
+    end
+
+    it "parses the struct members when they are used for the first time" do
+      vm = read_vm
+      expect(vm.instance_variable_get(:@lazy_members)).to include(:cpu)
+      expect(vm.name).to eql('myvm')
+      expect(vm.cpu.topology.cores).to eql(2)
+      expect(vm.instance_variable_get(:@lazy_members)).to_not include(:cpu)
+    end
+
+    it "discards the stored text when the member is set" do
+      vm = read_vm
+      vm.cpu = nil
+      expect(vm.cpu).to be_nil
+    end
+
+  end
+
+  context "in fast structs mode", :if => GENERATOR_MODE == 'fast-structs' do
+
+    it "defines the table of setters" do
+      expect(SDK::Vm::SETTERS).to be_frozen
+      expect(SDK::Vm::SETTERS[:name]).to eql(:name=)
+      expect(SDK::Vm::SETTERS[:href]).to eql(:href=)
+    end
+
+    it "ignores the keys that aren't members" do
+      vm = SDK::Vm.new(:name => 'myvm', :junk => 'junk')
+      expect(vm.name).to eql('myvm')
+      expect(vm.href).to be_nil
+    end
+
+  end
+
+  context "in sparse mode", :if => GENERATOR_MODE == 'sparse' do
+
+    it "stores only the members that have a value" do
+      vm = SDK::Vm.new(:name => 'myvm', :description => 'mydescription')
+      expect(vm.instance_variable_get(:@values)).to eql(:name => 'myvm', :description => 'mydescription')
+    end
+
+    it "removes the members that are set to nil" do
+      vm = SDK::Vm.new(:name => 'myvm', :description => 'mydescription')
+      vm.description = nil
+      expect(vm.description).to be_nil
+      expect(vm.instance_variable_get(:@values)).to eql(:name => 'myvm')
+    end
+
+  end
+
+  context "with native readers", :if => GENERATOR_MODE == 'native' do
+
+    it "uses the native readers of the selected types" do
+      ENV['OVIRT_SDK_NATIVE_READERS'].split(',').each do |tag|
+        class_name = tag.split('_').map(&:capitalize).join
+        expect(SDK.const_get("#{class_name}Reader")::NATIVE).to be true
+        expect(SDK::NativeReaders).to respond_to("read_#{tag}_one")
+        expect(SDK::NativeReaders).to respond_to("read_#{tag}_many")
+      end
+    end
+
+  end
+
+end
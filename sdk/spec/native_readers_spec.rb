@@ -0,0 +1,137 @@
+#
+# Copyright (c) 2016 Red Hat, Inc.
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#   http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+# The tags of the types that have a native reader, empty unless the SDK was generated with the "native" profile:
+NATIVE_TAGS = defined?(SDK::NativeReaders) ? SDK::NativeReaders.singleton_methods.grep(/\Aread_(.*)_one\z/) { $1 } : []
+
+# Documents used to compare the native readers with the Ruby readers. They contain attributes, nested structs, lists,
+# links, enums, booleans, numbers, dates and unknown elements. The types that aren't here are compared using a generic
+# document with the attributes and the name and description.
+NATIVE_SAMPLES = {
+  'vm' =>
+    '<vm id="123" href="/ovirt-engine/api/vms/123">' +
+      '<name>myvm</name>' +
+      '<description>My VM</description>' +
+      '<status>up</status>' +
+      '<memory>1073741824</memory>' +
+      '<stateless>false</stateless>' +
+      '<creation_time>2016-10-17T10:00:00.000+02:00</creation_time>' +
+      '<cpu><topology><cores>2</cores><sockets>1</sockets><threads>1</threads></topology></cpu>' +
+      '<os><type>rhel_7x64</type><boot><devices><device>hd</device><device>network</device></devices></boot></os>' +
+      '<high_availability><enabled>true</enabled><priority>1</priority></high_availability>' +
+      '<custom_properties><custom_property><name>a</name><value>1</value></custom_property></custom_properties>' +
+      '<cluster id="456" href="/ovirt-engine/api/clusters/456"/>' +
+      '<host id="789" href="/ovirt-engine/api/hosts/789"/>' +
+      '<link rel="nics" href="/ovirt-engine/api/vms/123/nics"/>' +
+      '<unknown><nested>ignored</nested></unknown>' +
+    '</vm>',
+  'host' =>
+    '<host id="789" href="/ovirt-engine/api/hosts/789">' +
+      '<name>myhost</name>' +
+      '<address>myhost.example.com</address>' +
+      '<status>up</status>' +
+      '<port>54321</port>' +
+      '<memory>8589934592</memory>' +
+      '<cpu><name>Intel</name><speed>2400</speed><topology><cores>4</cores></topology></cpu>' +
+      '<cluster id="456" href="/ovirt-engine/api/clusters/456"/>' +
+      '<link rel="nics" href="/ovirt-engine/api/hosts/789/nics"/>' +
+      '<unknown/>' +
+    '</host>',
+  'disk' =>
+    '<disk id="321" href="/ovirt-engine/api/disks/321">' +
+      '<name>mydisk</name>' +
+      '<alias>mydisk</alias>' +
+      '<format>cow</format>' +
+      '<status>ok</status>' +
+      '<sparse>true</sparse>' +
+      '<provisioned_size>10737418240</provisioned_size>' +
+      '<actual_size>0</actual_size>' +
+      '<storage_domains><storage_domain id="654"/><storage_domain id="987"/></storage_domains>' +
+      '<unknown>ignored</unknown>' +
+    '</disk>',
+}
+
+describe "native readers", :if => !NATIVE_TAGS.empty? do
+
+  # Returns the name of the class corresponding to the given tag, for example 'HostNic' for 'host_nic':
+  def class_name(tag)
+    tag.split('_').map(&:capitalize).join
+  end
+
+  # Returns the given document, or the generic document for the given tag:
+  def sample(tag)
+    NATIVE_SAMPLES[tag] ||
+      "<#{tag} id=\"123\" href=\"/ovirt-engine/api/#{tag}s/123\">" +
+        "<name>myname</name>" +
+        "<description>mydescription</description>" +
+      "</#{tag}>"
+  end
+
+  # Reads the given document with the given method of the reader of the tag, using the native readers or, if
+  # the 'native' parameter is false, the Ruby readers, and writes back the result:
+  def read_and_write(tag, xml, method, native)
+    unless native
+      NATIVE_TAGS.each do |other|
+        stub_const("OvirtSDK4::#{class_name(other)}Reader::NATIVE", false)
+      end
+    end
+    reader = SDK::XmlReader.new(xml)
+    result = SDK.const_get("#{class_name(tag)}Reader").send(method, reader)
+    reader.close
+    writer_class = SDK.const_get("#{class_name(tag)}Writer")
+    writer = SDK::XmlWriter.new
+    if method == :read_one
+      writer_class.write_one(result, writer)
+    else
+      writer_class.write_many(result, writer)
+    end
+    text = writer.string
+    writer.close
+    return result, text
+  end
+
+  NATIVE_TAGS.each do |tag|
+
+    context "for '#{tag}'" do
+
+      it "reads one object like the Ruby reader" do
+        native_result, native_text = read_and_write(tag, sample(tag), :read_one, true)
+        ruby_result, ruby_text = read_and_write(tag, sample(tag), :read_one, false)
+        expect(native_result.class).to eql(ruby_result.class)
+        expect(native_text).to eql(ruby_text)
+      end
+
+      it "reads an empty object like the Ruby reader" do
+        native_result, native_text = read_and_write(tag, "<#{tag}/>", :read_one, true)
+        ruby_result, ruby_text = read_and_write(tag, "<#{tag}/>", :read_one, false)
+        expect(native_result.class).to eql(ruby_result.class)
+        expect(native_text).to eql(ruby_text)
+      end
+
+      it "reads a list of objects like the Ruby reader" do
+        xml = "<#{tag}s href=\"/ovirt-engine/api/#{tag}s\">#{sample(tag)}<#{tag}/>#{sample(tag)}</#{tag}s>"
+        native_result, native_text = read_and_write(tag, xml, :read_many, true)
+        ruby_result, ruby_text = read_and_write(tag, xml, :read_many, false)
+        expect(native_result.size).to eql(3)
+        expect(native_result.href).to eql(ruby_result.href)
+        expect(native_text).to eql(ruby_text)
+      end
+
+    end
+
+  end
+
+end
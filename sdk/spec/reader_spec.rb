@@ -16,6 +16,43 @@
 
 describe SDK::Reader do
 
+  describe ".parse_fields" do
+
+    context "given nil" do
+
+      it "returns nil" do
+        expect(SDK::Reader.parse_fields(nil)).to be_nil
+      end
+
+    end
+
+    context "given simple names" do
+
+      it "selects them completely" do
+        expect(SDK::Reader.parse_fields([:id, 'name'])).to eql('id' => nil, 'name' => nil)
+      end
+
+    end
+
+    context "given paths" do
+
+      it "selects the nested fields" do
+        expect(SDK::Reader.parse_fields(['host.name', 'host.id'])).to eql('host' => { 'name' => nil, 'id' => nil })
+      end
+
+    end
+
+    context "given a path and the complete object" do
+
+      it "selects the complete object" do
+        expect(SDK::Reader.parse_fields(['host.name', :host])).to eql('host' => nil)
+        expect(SDK::Reader.parse_fields([:host, 'host.name'])).to eql('host' => nil)
+      end
+
+    end
+
+  end
+
   describe ".read_boolean" do
 
     context "given 'false'" do
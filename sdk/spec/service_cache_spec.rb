@@ -0,0 +1,57 @@
+#
+# Copyright (c) 2015-2016 Red Hat, Inc.
+#
+# Licensed under the Apache License, Version 2.0 (the "License");
+# you may not use this file except in compliance with the License.
+# You may obtain a copy of the License at
+#
+#   http://www.apache.org/licenses/LICENSE-2.0
+#
+# Unless required by applicable law or agreed to in writing, software
+# distributed under the License is distributed on an "AS IS" BASIS,
+# WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+# See the License for the specific language governing permissions and
+# limitations under the License.
+#
+
+describe SDK::ServiceCache do
+
+  describe ".fetch" do
+
+    context "given a key that isn't in the cache" do
+
+      it "calls the block and returns its result" do
+        cache = SDK::ServiceCache.new
+        expect(cache.fetch('123') { 'first' }).to eql('first')
+      end
+
+    end
+
+    context "given a key that is in the cache" do
+
+      it "returns the cached value without calling the block" do
+        cache = SDK::ServiceCache.new
+        first = cache.fetch('123') { 'first' }
+        second = cache.fetch('123') { 'second' }
+        expect(second).to be(first)
+      end
+
+    end
+
+    context "when the cache is full" do
+
+      it "removes the least recently used value" do
+        cache = SDK::ServiceCache.new(2)
+        first = cache.fetch('1') { 'first' }
+        cache.fetch('2') { 'second' }
+        cache.fetch('1') { 'unexpected' }
+        cache.fetch('3') { 'third' }
+        expect(cache.fetch('1') { 'unexpected' }).to be(first)
+        expect(cache.fetch('2') { 'new' }).to eql('new')
+      end
+
+    end
+
+  end
+
+end
@@ -67,6 +67,48 @@ describe SDK::VmReader do
 
     end
 
+    context "when given a VM with a status" do
+
+      it "uses the frozen constant of the enumerated type" do
+        reader = SDK::XmlReader.new('<vm><status>up</status></vm>')
+        result = SDK::VmReader.read_one(reader)
+        expect(result.status).to be(SDK::VmStatus::UP)
+      end
+
+      it "keeps the text of values that the enumerated type doesn't contain" do
+        reader = SDK::XmlReader.new('<vm><status>junk</status></vm>')
+        result = SDK::VmReader.read_one(reader)
+        expect(result.status).to eql('junk')
+      end
+
+    end
+
+    context "when given a selection of fields" do
+
+      it "reads only the selected fields" do
+        reader = SDK::XmlReader.new(
+          '<vm id="123"><name>myvm</name><description>mydesc</description><cpu><cores>2</cores></cpu></vm>'
+        )
+        result = SDK::VmReader.read_one(reader, SDK::Reader.parse_fields([:id, :name]))
+        expect(result.id).to eql('123')
+        expect(result.name).to eql('myvm')
+        expect(result.description).to be_nil
+        expect(result.cpu).to be_nil
+      end
+
+      it "reads only the selected fields of nested objects" do
+        reader = SDK::XmlReader.new(
+          '<vm><cluster id="123"><name>mycluster</name><description>mydesc</description></cluster></vm>'
+        )
+        result = SDK::VmReader.read_one(reader, SDK::Reader.parse_fields(['cluster.name']))
+        expect(result.cluster).to be_a(SDK::Cluster)
+        expect(result.cluster.id).to eql('123')
+        expect(result.cluster.name).to eql('mycluster')
+        expect(result.cluster.description).to be_nil
+      end
+
+    end
+
     context "when given an alternative tag" do
 
       it "ignores it and reads the attributes correctly" do
@@ -16,6 +16,51 @@
 
 describe SDK::Vm do
 
+  describe ".new" do
+
+    context "when given a hash" do
+
+      it "sets the attributes, including the inherited ones" do
+        vm = SDK::Vm.new(:href => '/vms/123', :id => '123', :name => 'myvm', :memory => 1024)
+        expect(vm.href).to eql('/vms/123')
+        expect(vm.id).to eql('123')
+        expect(vm.name).to eql('myvm')
+        expect(vm.memory).to eql(1024)
+        expect(vm.description).to be(nil)
+      end
+
+      it "converts nested hashes and arrays" do
+        vm = SDK::Vm.new(:cluster => { :id => '456' }, :disk_attachments => [{ :id => '789' }])
+        expect(vm.cluster).to be_a(SDK::Cluster)
+        expect(vm.cluster.id).to eql('456')
+        expect(vm.disk_attachments).to be_a(SDK::List)
+        expect(vm.disk_attachments.first).to be_a(SDK::DiskAttachment)
+        expect(vm.disk_attachments.first.id).to eql('789')
+      end
+
+      it "ignores the keys that aren't attributes" do
+        vm = SDK::Vm.new(:name => 'myvm', :junk => 'junk')
+        expect(vm.name).to eql('myvm')
+      end
+
+    end
+
+  end
+
+  describe ".name=" do
+
+    context "when given nil after a value" do
+
+      it "the value is removed" do
+        vm = SDK::Vm.new(:name => 'myvm')
+        vm.name = nil
+        expect(vm.name).to be(nil)
+      end
+
+    end
+
+  end
+
   describe ".disk_attachments=" do
 
     context "when given nil" do
@@ -90,4 +90,40 @@ describe SDK::VmsService do
 
   end
 
+  describe "#list_each" do
+
+    context "with a block" do
+
+      it "yields each VM" do
+        mount_xml(path: 'vms', body: '<vms><vm id="123"/><vm id="456"/></vms>')
+        ids = []
+        @service.list_each { |vm| ids << vm.id }
+        expect(ids).to eql(['123', '456'])
+      end
+
+    end
+
+    context "without a block" do
+
+      it "returns a lazy enumerator" do
+        mount_xml(path: 'vms', body: '<vms><vm id="123"/><vm id="456"/></vms>')
+        vms = @service.list_each
+        expect(vms).to be_an(Enumerator::Lazy)
+        expect(vms.map(&:id).first(1)).to eql(['123'])
+      end
+
+    end
+
+    context "with an unfeasible query" do
+
+      it "doesn't yield anything" do
+        mount_xml(path: 'vms', body: '<vms/>')
+        vms = @service.list_each(:search => 'name=ugly').to_a
+        expect(vms).to eql([])
+      end
+
+    end
+
+  end
+
 end
@@ -48,6 +48,55 @@ describe SDK::XmlReader do
 
   end
 
+  describe ".get_attributes" do
+
+    context "given attributes in any order" do
+
+      it "returns the values in the order of the names" do
+        reader = SDK::XmlReader.new('<root name="myname" id="123"/>')
+        expect(reader.get_attributes(['id', 'name'])).to eql(['123', 'myname'])
+      end
+
+    end
+
+    context "given non existent attribute" do
+
+      it "returns nil for it" do
+        reader = SDK::XmlReader.new('<root id="123"/>')
+        expect(reader.get_attributes(['id', 'name'])).to eql(['123', nil])
+      end
+
+    end
+
+    context "given repeated values and the dedup flag" do
+
+      it "returns the same frozen string for equal values" do
+        reader = SDK::XmlReader.new('<root><first id="123"/><second id="123"/></root>', true)
+        reader.read
+        first = reader.get_attributes(['id'])[0]
+        reader.next_element
+        second = reader.get_attributes(['id'])[0]
+        expect(first).to eql('123')
+        expect(second).to be(first)
+        expect(second).to be_frozen
+      end
+
+    end
+
+    context "given attributes" do
+
+      it "stays in the element" do
+        reader = SDK::XmlReader.new('<root id="123"><name>myname</name></root>')
+        reader.get_attributes(['id'])
+        expect(reader.node_name).to eql('root')
+        reader.read
+        expect(reader.read_element).to eql('myname')
+      end
+
+    end
+
+  end
+
   describe ".read_element" do
 
     context "given an empty element" do
@@ -167,4 +216,20 @@ describe SDK::XmlReader do
 
   end
 
+  describe ".read_outer_xml" do
+
+    context "given an element with nested elements" do
+
+      it "returns the text of the element and moves to the next one" do
+        reader = SDK::XmlReader.new('<root><first><name>myname</name></first><second/></root>')
+        reader.read
+        expect(reader.read_outer_xml).to eql('<first><name>myname</name></first>')
+        expect(reader.forward).to be true
+        expect(reader.node_name).to eql('second')
+      end
+
+    end
+
+  end
+
 end